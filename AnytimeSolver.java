@@ -0,0 +1,139 @@
+/*
+ * AnytimeSolver always has a move ready, however little time it is given.
+ * It runs the same IdaSearch passes as OptimalSolver, and while it searches it remembers the moves to the state
+ * with the lowest GameState.lowerBound() it has reached. If time runs out before a solution is found,
+ * the first of those moves is the best move so far. Calling improve again with more time carries on
+ * from the bound it reached, so the answer keeps getting better until a shortest solution is found.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+
+public class AnytimeSolver implements Solver {
+    private GameState state; // Searched in place. Always back at the start state between searches
+    private VisitedTable searchHistory; // Fewest moves each game state was reached with during the current pass
+    private IdaSearch search; // Tells updateBest about every state it reaches
+    private ArrayList<Point> bestPath; // Moves to the state with the lowest lower bound so far, or the solution
+    private int bestEstimate; // Lower bound of the state bestPath leads to
+    private int bound; // Bound of the current IDA* pass
+    private boolean solved;
+    private boolean unsolvable;
+    private SolverMetrics metrics = new SolverMetrics("Anytime IDA*"); // Work done by the last call to improve
+
+    // Only a copy of the state is used, so the caller's state is never read or changed while searching
+    public AnytimeSolver(GameState state) {
+        this.state = state.copy();
+        searchHistory = StateTable.forSearch(this.state);
+        search = new IdaSearch(this.state, searchHistory, this::updateBest);
+        bestPath = new ArrayList<>();
+        bestEstimate = Integer.MAX_VALUE;
+        bound = this.state.lowerBound();
+        solved = this.state.isSolved();
+    }
+
+    // Search until control says to stop or the search is finished
+    public void improve(SearchControl control) {
+        metrics = new SolverMetrics("Anytime IDA*");
+        if(bestPath.isEmpty()){
+            searchOneMove();
+        }
+        while(!isFinished() && !control.shouldStop()){
+            int next = search.pass(bound, control, metrics);
+            if(next == IdaSearch.FOUND){
+                // An earlier state with a lower bound of 0 may be best so far, but only this path solves the Level
+                solved = true;
+                bestEstimate = 0;
+                bestPath = search.getSolution();
+            }
+            // A pass that was stopped early is searched again from the start next time
+            else if(control.shouldStop()){
+                break;
+            }
+            // Every branch was searched without going over the bound: the Level cannot be solved
+            else if(next == Integer.MAX_VALUE){
+                unsolvable = true;
+            }
+            else {
+                bound = next;
+            }
+        }
+        if(!isFinished()){
+            metrics.stop();
+        }
+        metrics.visitedSize(searchHistory.size());
+        metrics.finish(solved, bestPath.size());
+        if(isFinished()){
+            close();
+        }
+    }
+
+    // Free the table of visited states once no more improve calls will be made. The results can still be read
+    public void close() {
+        searchHistory.close();
+    }
+
+    // Pick the move to the state with the lowest lower bound, so there is an answer before any deeper search
+    private void searchOneMove() {
+        for(int i = 0; i < state.getTubeCount(); i++){
+            for(int j = 0; j < state.getTubeCount(); j++){
+                if(state.isValidMove(i, j)){
+                    int count = state.apply(i, j);
+                    int lowerBound = state.lowerBound();
+                    if(lowerBound < bestEstimate){
+                        bestEstimate = lowerBound;
+                        bestPath = new ArrayList<>();
+                        bestPath.add(new Point(i, j));
+                    }
+                    state.undo(i, j, count);
+                }
+            }
+        }
+    }
+
+    // Remember the current path if it reaches a lower bound than the best so far, or the same one in fewer moves
+    private void updateBest(int moves, int lowerBound) {
+        if(solved){
+            return;
+        }
+        if(lowerBound < bestEstimate || (lowerBound == bestEstimate && moves < bestPath.size())){
+            bestEstimate = lowerBound;
+            bestPath = search.getPath(moves);
+        }
+    }
+
+    // True once a shortest solution is found
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // True once there is nothing left to improve: a shortest solution was found or the Level cannot be solved
+    public boolean isFinished() {
+        return solved || unsolvable;
+    }
+
+    // Lower bound of the moves left after the best moves so far. 0 if they solve the Level
+    public int getBestEstimate() {
+        return bestEstimate;
+    }
+
+    // The shortest solution if one was found, otherwise the moves that get closest to solved
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return bestPath;
+    }
+
+    // Best move found so far. Returns null if the Level cannot be solved or there are no moves
+    @Override
+    public Point getNextMove() {
+        if(unsolvable || bestPath.isEmpty()){
+            return null;
+        }
+        return bestPath.getFirst();
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+}
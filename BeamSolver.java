@@ -0,0 +1,157 @@
+/*
+ * Finds a solution to a Level that is too big to search exhaustively with beam search.
+ * The search goes forward one layer of moves at a time like a Breadth-First search, but only keeps the
+ * width states of each layer with the lowest GameState.lowerBound(), so every layer is the same size
+ * however big the Level is. States already reached are kept in a BoundedStateTable, so memory stays
+ * within a fixed budget too. Solutions are not always the shortest, and a width too small for the Level
+ * can leave every kept state stuck, so a wider beam finds solutions more reliably but takes longer.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BeamSolver implements Solver {
+    public static final int DEFAULT_WIDTH = 2000; // States kept in each layer
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+    private static final long MAX_BYTES = 64L << 20; // Memory for the table of states already reached
+    private static final int MAX_DEPTH = 2000; // Layers allowed to search before stopping
+
+    private ArrayList<Point> moveList; // Moves from the current state to the solution, in order. Empty if no solution is found
+    private boolean solved;
+    private int width;
+    private SearchControl control; // Stops the search when time runs out or it is cancelled
+    private MoveGenerator generator;
+    private SolverMetrics metrics = new SolverMetrics("Beam search");
+
+    // Each kept state of every layer: the state in the layer before it was reached from and the move made.
+    // Only three ints per state, so the whole path can be rebuilt without keeping old layers' states
+    private ArrayList<int[]> parents = new ArrayList<>();
+    private ArrayList<int[]> moveFrom = new ArrayList<>();
+    private ArrayList<int[]> moveTo = new ArrayList<>();
+
+    public BeamSolver(Level level) {
+        this(new GameState(level.getTubeList()));
+    }
+
+    public BeamSolver(GameState state) {
+        this(state, new SearchControl(TIMELIMIT), DEFAULT_WIDTH);
+    }
+
+    // Search with width states in each layer until the SearchControl says to stop
+    public BeamSolver(GameState state, SearchControl control, int width) {
+        this.control = control;
+        this.width = width;
+        moveList = new ArrayList<>();
+        generator = new MoveGenerator(state.getTubeCount());
+        solved = solve(state.copy());
+        metrics.finish(solved, moveList.size());
+    }
+
+    private boolean solve(GameState start) {
+        if(start.isSolved()){
+            return true;
+        }
+        VisitedTable visited = new BoundedStateTable(start, StateTable.useSymmetry(start), MAX_BYTES);
+        visited.add(start);
+        GameState[] layer = {start};
+
+        for(int depth = 0; depth < MAX_DEPTH && layer.length > 0; depth++){
+            metrics.visitedSize(visited.size());
+            metrics.reachDepth(depth + 1);
+            // Score every move from the layer without keeping its state: lower bound first, then its place in the list
+            int moveTotal = 0;
+            long[] candidates = new long[64];
+            int[] candidateParent = new int[64];
+            int[] candidateFrom = new int[64];
+            int[] candidateTo = new int[64];
+            for(int s = 0; s < layer.length; s++){
+                if(control.shouldStop()){
+                    return false;
+                }
+                GameState state = layer[s];
+                int moveCount = generator.generate(state);
+                metrics.expand();
+                metrics.generate(moveCount);
+                for(int m = 0; m < moveCount; m++){
+                    int from = generator.getFrom(m);
+                    int to = generator.getTo(m);
+                    int count = state.apply(from, to);
+                    if(state.isSolved()){
+                        state.undo(from, to, count);
+                        buildMoveList(s, from, to);
+                        return true;
+                    }
+                    if(visited.add(state)){
+                        if(moveTotal == candidates.length){
+                            candidates = Arrays.copyOf(candidates, moveTotal * 2);
+                            candidateParent = Arrays.copyOf(candidateParent, moveTotal * 2);
+                            candidateFrom = Arrays.copyOf(candidateFrom, moveTotal * 2);
+                            candidateTo = Arrays.copyOf(candidateTo, moveTotal * 2);
+                        }
+                        candidates[moveTotal] = ((long) state.lowerBound() << 32) | moveTotal;
+                        candidateParent[moveTotal] = s;
+                        candidateFrom[moveTotal] = from;
+                        candidateTo[moveTotal] = to;
+                        moveTotal++;
+                    }
+                    else{
+                        metrics.duplicate();
+                    }
+                    state.undo(from, to, count);
+                }
+            }
+
+            // Keep the best width of them as the next layer
+            Arrays.sort(candidates, 0, moveTotal);
+            int kept = Math.min(width, moveTotal);
+            GameState[] next = new GameState[kept];
+            int[] parent = new int[kept];
+            int[] from = new int[kept];
+            int[] to = new int[kept];
+            for(int i = 0; i < kept; i++){
+                int c = (int) candidates[i];
+                parent[i] = candidateParent[c];
+                from[i] = candidateFrom[c];
+                to[i] = candidateTo[c];
+                next[i] = layer[parent[i]].moveBlock(from[i], to[i]);
+            }
+            parents.add(parent);
+            moveFrom.add(from);
+            moveTo.add(to);
+            layer = next;
+        }
+        return false;
+    }
+
+    // Follow the parents back from the last layer's state s, which the move (from, to) solves
+    private void buildMoveList(int s, int from, int to) {
+        moveList.add(new Point(from, to));
+        for(int depth = parents.size() - 1; depth >= 0; depth--){
+            moveList.add(new Point(moveFrom.get(depth)[s], moveTo.get(depth)[s]));
+            s = parents.get(depth)[s];
+        }
+        Collections.reverse(moveList);
+    }
+
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // Number of moves in the solution, or -1 if no solution was found
+    public int getSolutionLength() {
+        return solved ? moveList.size() : -1;
+    }
+
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+}
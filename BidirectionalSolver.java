@@ -0,0 +1,276 @@
+/*
+ * Finds a shortest solution to a Level with a Breadth-First search from both ends at once:
+ * forward from the Level's state and backward from the solved state, one layer of moves at a time.
+ * The side with the smaller layer is searched next, and the search stops when the two sides reach
+ * a common state. Each side only has to go about half the solution's length, so far fewer states are
+ * searched than by going the whole way from one end.
+ *
+ * Moves made backward are found by taking Blocks off the top of a Tube and putting them back where they
+ * could have come from, then checking that the forward move would really have made that state.
+ * The backward side keeps states in its own Tube order, so its half of the solution is rebuilt by finding
+ * the forward move from each state to the next state on the backward side's path.
+ *
+ * Only Levels where every Tube has the same capacity and each color fills whole Tubes have a single
+ * solved state to search back from. Other Levels are solved with OptimalSolver instead.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BidirectionalSolver implements Solver {
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+    private static final int MAX_STATES = 1 << 21; // States both sides may hold before giving up
+    private ArrayList<Point> moveList; // Moves from the current state to the solution, in order. Empty if no solution is found
+    private boolean solved;
+    private SearchControl control; // Stops the search when time runs out or it is cancelled
+    private MoveGenerator generator;
+    private SolverMetrics metrics;
+
+    // The shortest meeting found so far: a state's index on each side and the total number of moves
+    private int meetForward;
+    private int meetBackward;
+    private int meetLength;
+
+    public BidirectionalSolver(Level level) {
+        this(new GameState(level.getTubeList()));
+    }
+
+    public BidirectionalSolver(GameState state) {
+        this(state, new SearchControl(TIMELIMIT));
+    }
+
+    // Search until the SearchControl says to stop
+    public BidirectionalSolver(GameState state, SearchControl control) {
+        this.control = control;
+        moveList = new ArrayList<>();
+        generator = new MoveGenerator(state.getTubeCount());
+
+        GameState goal = solvedState(state);
+        if(goal == null){
+            OptimalSolver optimalSolver = new OptimalSolver(state, control);
+            solved = optimalSolver.isSolved();
+            moveList = optimalSolver.getMoveList();
+            metrics = optimalSolver.getMetrics();
+            return;
+        }
+        metrics = new SolverMetrics("Bidirectional BFS");
+        solved = solve(state.copy(), goal);
+        metrics.finish(solved, moveList.size());
+    }
+
+    // The solved state for a Level where every Tube has the same capacity and each color fills whole Tubes.
+    // Returns null for other Levels
+    private static GameState solvedState(GameState state) {
+        int capacity = state.getCapacity(0);
+        int[] colorCount = new int[16];
+        for(int i = 0; i < state.getTubeCount(); i++){
+            if(state.getCapacity(i) != capacity){
+                return null;
+            }
+            for(int j = 0; j < state.getFillAmt(i); j++){
+                colorCount[state.getBlock(i, j)]++;
+            }
+        }
+        GameState goal = new GameState(state.getTubeCount(), capacity);
+        int tube = 0;
+        for(int color = 1; color < colorCount.length; color++){
+            if(colorCount[color] % capacity != 0){
+                return null;
+            }
+            for(int i = 0; i < colorCount[color]; i++){
+                if(goal.isFull(tube)){
+                    tube++;
+                }
+                goal.addBlock(tube, (byte) color);
+            }
+        }
+        return goal;
+    }
+
+    private boolean solve(GameState start, GameState goal) {
+        Side forward = new Side(start);
+        Side backward = new Side(goal);
+        meetLength = Integer.MAX_VALUE;
+        if(backward.index.getValue(start) >= 0){
+            return true;
+        }
+
+        // Search a whole layer of the smaller side, then stop if the sides met anywhere in it
+        while(meetLength == Integer.MAX_VALUE){
+            metrics.visitedSize(forward.size() + backward.size());
+            if(forward.layerSize() == 0 || backward.layerSize() == 0 || control.shouldStop()
+                    || forward.size() + backward.size() > MAX_STATES){
+                return false;
+            }
+            if(forward.layerSize() <= backward.layerSize()){
+                expandForward(forward, backward);
+            }
+            else{
+                expandBackward(backward, forward);
+            }
+            if(control.shouldStop()){
+                return false;
+            }
+        }
+
+        // Forward half: follow parents back to the start, then put the moves in order
+        for(int i = meetForward; forward.parent[i] >= 0; i = forward.parent[i]){
+            moveList.add(new Point(forward.moveFrom[i], forward.moveTo[i]));
+        }
+        Collections.reverse(moveList);
+
+        // Backward half: from the meeting state, find the forward move to each next state on the backward path
+        GameState state = forward.states.get(meetForward).copy();
+        for(int i = meetBackward; backward.parent[i] >= 0; i = backward.parent[i]){
+            int next = backward.parent[i];
+            int moveCount = generator.generate(state);
+            for(int m = 0; m < moveCount; m++){
+                int from = generator.getFrom(m);
+                int to = generator.getTo(m);
+                int count = state.apply(from, to);
+                if(backward.index.getValue(state) == next){
+                    moveList.add(new Point(from, to));
+                    break;
+                }
+                state.undo(from, to, count);
+            }
+        }
+        return true;
+    }
+
+    // Make every move from the forward side's current layer
+    private void expandForward(Side forward, Side backward) {
+        int layerEnd = forward.size();
+        for(int s = forward.layerStart; s < layerEnd; s++){
+            if(control.shouldStop()){
+                return;
+            }
+            GameState state = forward.states.get(s);
+            int moveCount = generator.generate(state);
+            metrics.expand();
+            metrics.generate(moveCount);
+            for(int m = 0; m < moveCount; m++){
+                GameState next = state.moveBlock(generator.getFrom(m), generator.getTo(m));
+                int index = forward.add(next, s, generator.getFrom(m), generator.getTo(m));
+                if(index >= 0){
+                    metrics.reachDepth(forward.depth[index]);
+                    checkMeeting(index, backward.index.getValue(next), forward, backward);
+                }
+                else{
+                    metrics.duplicate();
+                }
+            }
+        }
+        forward.layerStart = layerEnd;
+    }
+
+    // Find every state that one move leads from to a state in the backward side's current layer
+    private void expandBackward(Side backward, Side forward) {
+        int layerEnd = backward.size();
+        for(int s = backward.layerStart; s < layerEnd; s++){
+            if(control.shouldStop()){
+                return;
+            }
+            GameState state = backward.states.get(s).copy();
+            metrics.expand();
+            int moveCount = generator.generatePredecessors(state);
+            metrics.generate(moveCount);
+            for(int m = 0; m < moveCount; m++){
+                int a = generator.getFrom(m);
+                int b = generator.getTo(m);
+                int k = generator.getCount(m);
+                state.undo(a, b, k);
+                int index = backward.add(state.copy(), s, a, b);
+                if(index >= 0){
+                    metrics.reachDepth(backward.depth[index]);
+                    checkMeeting(forward.index.getValue(state), index, forward, backward);
+                }
+                else{
+                    metrics.duplicate();
+                }
+                state.undo(b, a, k);
+            }
+        }
+        backward.layerStart = layerEnd;
+    }
+
+    // Remember the meeting if both sides have reached this state and it makes a shorter solution
+    private void checkMeeting(int forwardIndex, int backwardIndex, Side forward, Side backward) {
+        if(forwardIndex < 0 || backwardIndex < 0){
+            return;
+        }
+        int length = forward.depth[forwardIndex] + backward.depth[backwardIndex];
+        if(length < meetLength){
+            meetLength = length;
+            meetForward = forwardIndex;
+            meetBackward = backwardIndex;
+        }
+    }
+
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // Number of moves in the shortest solution, or -1 if no solution was found
+    public int getSolutionLength() {
+        return solved ? moveList.size() : -1;
+    }
+
+    // Every move of the shortest solution in order
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    // States reached from one end, each with the state it was reached from and the move between them.
+    // index maps a state (ignoring Tube order) to its position in states
+    private static class Side {
+        private ArrayList<GameState> states = new ArrayList<>();
+        private StateTable index = new StateTable();
+        private int[] parent = new int[1024]; // -1 for the state the side started from
+        private int[] moveFrom = new int[1024];
+        private int[] moveTo = new int[1024];
+        private int[] depth = new int[1024];
+        private int layerStart; // First state of the layer to search next
+
+        private Side(GameState root) {
+            add(root, -1, 0, 0);
+        }
+
+        // Add a state reached from parentIndex by a move. Returns its index, or -1 if it was already reached
+        private int add(GameState state, int parentIndex, int from, int to) {
+            int position = states.size();
+            if(!index.addIfLower(state, position)){
+                return -1;
+            }
+            if(position == parent.length){
+                parent = Arrays.copyOf(parent, position * 2);
+                moveFrom = Arrays.copyOf(moveFrom, position * 2);
+                moveTo = Arrays.copyOf(moveTo, position * 2);
+                depth = Arrays.copyOf(depth, position * 2);
+            }
+            states.add(state);
+            parent[position] = parentIndex;
+            moveFrom[position] = from;
+            moveTo[position] = to;
+            depth[position] = parentIndex < 0 ? 0 : depth[parentIndex] + 1;
+            return position;
+        }
+
+        private int size() {
+            return states.size();
+        }
+
+        private int layerSize() {
+            return states.size() - layerStart;
+        }
+    }
+}
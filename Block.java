@@ -22,6 +22,11 @@ public class Block {
         return color;
     }
 
+    //returns the letter used to identify this block in files
+    public char getId() {
+        return id;
+    }
+
     //just checks if block colours are equal, can change to overriding the object.equals
     public boolean equals(Block block){
         return color.equals(block.color);
@@ -0,0 +1,135 @@
+/*
+ * BoundedStateTable is a VisitedTable that never uses more than a set number of bytes.
+ * States are kept exactly in a StateTable until half of the memory is used. After that:
+ * - add() records new states in a Bloom filter made from the other half. A Bloom filter is a bit array
+ *   where each state sets a few bits picked by its hash, so it takes a few bits per state no matter how
+ *   big the state is. It can mistake a new state for one already seen, which may cut off part of a
+ *   Depth-First search, but it never misses a state that was added.
+ * - addIfLower() stops remembering new states and always lets the search continue, so IDA* still finds
+ *   shortest solutions and only loses some pruning.
+ * Either way the search slows down or may miss a solution instead of running out of memory.
+ */
+
+import java.util.Arrays;
+
+public class BoundedStateTable implements VisitedTable {
+    private static final int HASHES = 4; // Bits set in the Bloom filter for each state
+
+    private final StateTable exact;
+    private final int maxExact; // States the exact table may hold
+    private final boolean symmetric;
+    private final int bloomWords; // Size of the Bloom filter once it is needed
+    private long[] bloom; // Bloom filter bits, null until the exact table is full
+    private long bloomBits;
+    private int bloomCount; // States added to the Bloom filter
+
+    // Table for searching from this state that uses at most maxBytes
+    public BoundedStateTable(GameState state, boolean symmetric, long maxBytes) {
+        this.symmetric = symmetric;
+        exact = new StateTable(1024, symmetric);
+        // The most states the exact table can hold without its growth going over half the bytes
+        int keyLength = state.getCanonicalKeyLength();
+        int low = 1;
+        int high = Integer.MAX_VALUE / 4;
+        while(low < high){
+            int middle = low + (high - low + 1) / 2;
+            if(StateTable.memoryFor(middle, keyLength) <= maxBytes / 2){
+                low = middle;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        maxExact = low;
+        bloomWords = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, maxBytes / 2 / 8));
+    }
+
+    @Override
+    public boolean add(GameState state) {
+        if(exact.contains(state)){
+            return false;
+        }
+        if(exact.size() < maxExact){
+            return exact.add(state);
+        }
+        return addToBloom(state);
+    }
+
+    @Override
+    public boolean addIfLower(GameState state, int value) {
+        if(exact.size() < maxExact || exact.contains(state)){
+            return exact.addIfLower(state, value);
+        }
+        // Out of room: nothing is remembered, so the search goes on as if the state were new
+        return true;
+    }
+
+    @Override
+    public int getValue(GameState state) {
+        return exact.getValue(state);
+    }
+
+    @Override
+    public boolean contains(GameState state) {
+        return exact.contains(state) || (bloom != null && inBloom(hashOf(state)));
+    }
+
+    // States remembered exactly plus states added to the Bloom filter
+    @Override
+    public int size() {
+        return exact.size() + bloomCount;
+    }
+
+    @Override
+    public void clear() {
+        exact.clear();
+        if(bloom != null){
+            Arrays.fill(bloom, 0L);
+        }
+        bloomCount = 0;
+    }
+
+    // True once states are no longer all remembered exactly
+    public boolean isFull() {
+        return exact.size() >= maxExact;
+    }
+
+    // Set the state's bits. Returns false if they were all set already, so the state was probably added before
+    private boolean addToBloom(GameState state) {
+        if(bloom == null){
+            bloom = new long[bloomWords];
+            bloomBits = (long) bloomWords * 64;
+        }
+        long hash = hashOf(state);
+        if(inBloom(hash)){
+            return false;
+        }
+        long step = stepOf(hash);
+        for(int i = 0; i < HASHES; i++){
+            long bit = Long.remainderUnsigned(hash + i * step, bloomBits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        bloomCount++;
+        return true;
+    }
+
+    private boolean inBloom(long hash) {
+        long step = stepOf(hash);
+        for(int i = 0; i < HASHES; i++){
+            long bit = Long.remainderUnsigned(hash + i * step, bloomBits);
+            if((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Second hash for picking the bits, made from the high half of the first so the bits are spread apart
+    private static long stepOf(long hash) {
+        return (hash >>> 32) * 0x9E3779B97F4A7C15L | 1;
+    }
+
+    private long hashOf(GameState state) {
+        return symmetric ? state.symmetricHash() : state.canonicalHash();
+    }
+}
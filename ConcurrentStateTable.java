@@ -0,0 +1,62 @@
+/*
+ * ConcurrentStateTable is a StateTable that many search threads can share.
+ * States are split into stripes by their canonical hash and each stripe is its own StateTable with its own lock,
+ * so threads only wait for each other when they touch the same stripe.
+ */
+
+public class ConcurrentStateTable {
+    private final StateTable[] stripes;
+    private final int mask;
+    private final boolean symmetric;
+
+    public ConcurrentStateTable() {
+        this(64, false);
+    }
+
+    // Create the table for searching from this state. See StateTable.forSearch
+    public static ConcurrentStateTable forSearch(GameState state) {
+        return new ConcurrentStateTable(64, StateTable.useSymmetry(state));
+    }
+
+    // Number of stripes is rounded up to a power of 2
+    public ConcurrentStateTable(int stripeCount, boolean symmetric) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new StateTable[count];
+        for(int i = 0; i < count; i++){
+            stripes[i] = new StateTable(1024, symmetric);
+        }
+        mask = count - 1;
+        this.symmetric = symmetric;
+    }
+
+    // Add a GameState. Returns false if the same state (ignoring Tube order) was already added by any thread
+    public boolean add(GameState state) {
+        StateTable stripe = stripeFor(state);
+        synchronized(stripe){
+            return stripe.add(state);
+        }
+    }
+
+    public boolean contains(GameState state) {
+        StateTable stripe = stripeFor(state);
+        synchronized(stripe){
+            return stripe.contains(state);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for(StateTable stripe : stripes){
+            synchronized(stripe){
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    // Use the top bits of the hash to pick a stripe. StateTable uses the low bits to pick a slot
+    private StateTable stripeFor(GameState state) {
+        long hash = symmetric ? state.symmetricHash() : state.canonicalHash();
+        return stripes[(int) (hash >>> 58) & mask];
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * DeadlockDetector tells the Level when the player is stuck or can no longer solve it.
+ * It keeps a GameState of the Level, and after a move or an undo only the Blocks that moved are moved in it.
+ * Stuck means MoveGenerator finds no legal move. Unsolvable means a RetrogradeTable for the Level's shape
+ * shows there is no way to the solved state, which is checked in one table lookup. The table is found
+ * once when the detector is reset, since moves never change the Level's shape.
+ */
+
+import java.util.ArrayList;
+
+public class DeadlockDetector {
+    public enum Status {
+        PLAYABLE,
+        STUCK, // No legal moves, only Undo or Restart
+        UNSOLVABLE // Moves are left but none of them lead to solved
+    }
+
+    private ArrayList<Tube> tubeList;
+    private GameState state; // Same Blocks as the Tubes in tubeList
+    private MoveGenerator generator;
+    private RetrogradeTable table; // null if there is no table for the Level's shape
+    private Status status;
+
+    public DeadlockDetector(ArrayList<Tube> tubeList) {
+        reset(tubeList);
+    }
+
+    // Read every Tube again, for example after the Level is restarted
+    public void reset(ArrayList<Tube> tubeList) {
+        this.tubeList = tubeList;
+        state = new GameState(tubeList);
+        generator = new MoveGenerator(state.getTubeCount());
+        table = RetrogradeTable.forState(state);
+        status = findStatus();
+    }
+
+    // Move the Blocks a move or an undo carried from start to end and check the status again
+    public void update(Tube start, Tube end) {
+        int from = tubeList.indexOf(start);
+        int to = tubeList.indexOf(end);
+        int count = end.getFillAmt() - state.getFillAmt(to);
+        // undo moves Blocks back from its second Tube to its first, so the Tubes are given the other way round
+        state.undo(to, from, count);
+        status = findStatus();
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    private Status findStatus() {
+        if(state.isSolved()){
+            return Status.PLAYABLE;
+        }
+        if(generator.generate(state) == 0){
+            return Status.STUCK;
+        }
+        if(table != null && table.getDistance(state) < 0){
+            return Status.UNSOLVABLE;
+        }
+        return Status.PLAYABLE;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * DepthFirstSearch is the Depth-First search SolveLevel and ParallelSolver run over a single compact GameState.
+ * Moves are applied to the state and undone in place, and the search keeps its own stack of frames instead of
+ * recursing, so there is no limit from the Java call stack. Moves to states already reached are skipped.
+ * A search only changes its own fields, so each thread of a parallel search uses its own DepthFirstSearch.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+public class DepthFirstSearch {
+    private final Predicate<GameState> addToHistory; // Adds a state to the states reached. False if it was already there
+    private final int maxSearchDepth; // Depth allowed to search before stopping
+
+    // Search stack. Index is the depth below the state searched from. Reused for every search and only grows when
+    // the search goes deeper than before
+    private int[] nextMove = new int[64]; // Next move to try at this depth, as an index into the depth's MoveGenerator
+    private ArrayList<MoveGenerator> generators = new ArrayList<>(); // Legal moves at each depth
+    private int[] fromStack = new int[64]; // Move made at this depth
+    private int[] toStack = new int[64];
+    private int[] countStack = new int[64]; // Blocks moved at this depth, needed to undo the move
+
+    // Work done by every search so far, see SolverMetrics
+    private long expanded;
+    private long generated;
+    private long duplicates;
+    private int maxDepth;
+    private boolean stopped; // The last search was stopped before it searched everything
+
+    public DepthFirstSearch(Predicate<GameState> addToHistory, int maxSearchDepth) {
+        this.addToHistory = addToHistory;
+        this.maxSearchDepth = maxSearchDepth;
+    }
+
+    // Search from a state startDepth moves from the start until a solution is found, every branch is searched
+    // or stop says to. Returns the moves from the state to the solution in order, or null if none was found.
+    // The state is left where the search ended
+    public ArrayList<Point> search(GameState state, int startDepth, BooleanSupplier stop) {
+        int tubeCount = state.getTubeCount();
+        int depth = 0;
+        nextMove[0] = 0;
+        stopped = false;
+        maxDepth = Math.max(maxDepth, startDepth);
+        expanded++;
+        generated += MoveGenerator.forDepth(generators, 0, tubeCount).generate(state);
+
+        while(depth >= 0){
+            // If time limit is reached or the search was cancelled stop searching. This avoids getting stuck in a search.
+            if(stop.getAsBoolean()){
+                stopped = true;
+                return null;
+            }
+
+            // Try every legal move at this depth, continuing from the last move tried
+            boolean movedDeeper = false;
+            MoveGenerator generator = generators.get(depth);
+            while(nextMove[depth] < generator.size()){
+                int from = generator.getFrom(nextMove[depth]);
+                int to = generator.getTo(nextMove[depth]);
+                nextMove[depth]++;
+                int count = state.apply(from, to);
+
+                // Check to see if this is a Game State that we have already seen to avoid repeating loops
+                if(!addToHistory.test(state)){
+                    duplicates++;
+                    state.undo(from, to, count);
+                    continue;
+                }
+                maxDepth = Math.max(maxDepth, startDepth + depth + 1);
+                fromStack[depth] = from;
+                toStack[depth] = to;
+                countStack[depth] = count;
+
+                // If this move made a winning game, the moves on the stack are the solution
+                if(state.isSolved()){
+                    ArrayList<Point> solution = new ArrayList<>();
+                    for(int d = 0; d <= depth; d++){
+                        solution.add(new Point(fromStack[d], toStack[d]));
+                    }
+                    return solution;
+                }
+
+                // If this branch reached the depth limit do not go any farther
+                if(startDepth + depth + 1 > maxSearchDepth){
+                    state.undo(from, to, count);
+                    continue;
+                }
+
+                depth++;
+                ensureStackSize(depth);
+                nextMove[depth] = 0;
+                expanded++;
+                // Leave out moves that undo this one or could have been made before it
+                generated += MoveGenerator.forDepth(generators, depth, tubeCount).generate(state, from, to, count);
+                movedDeeper = true;
+                break;
+            }
+
+            // If none of the moves at this depth lead to a solution, back up and undo the move that led here
+            if(!movedDeeper){
+                depth--;
+                if(depth >= 0){
+                    state.undo(fromStack[depth], toStack[depth], countStack[depth]);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Double the size of the search stack when the search goes deeper than it has before
+    private void ensureStackSize(int depth) {
+        if(depth < nextMove.length){
+            return;
+        }
+        int size = nextMove.length * 2;
+        nextMove = Arrays.copyOf(nextMove, size);
+        fromStack = Arrays.copyOf(fromStack, size);
+        toStack = Arrays.copyOf(toStack, size);
+        countStack = Arrays.copyOf(countStack, size);
+    }
+
+    public long getNodesExpanded() {
+        return expanded;
+    }
+
+    public long getNodesGenerated() {
+        return generated;
+    }
+
+    public long getDuplicateHits() {
+        return duplicates;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
@@ -169,6 +169,7 @@ public class Game extends JComponent implements GameEventListener, MouseListener
             level.add(saveButton);
             level.add(undoButton);
             level.add(hintButton);
+            level.setHintButton(hintButton);
         }
     }
 
@@ -513,6 +514,9 @@ public class Game extends JComponent implements GameEventListener, MouseListener
     // Examples: Navigating Menus and Loading a Level
     @Override
     public void gameEventPerformed(GameEvent event){
+        // Every Game event leaves or reloads the current Level, so stop any hint being searched for it
+        currentLevel.cancelHint();
+
         switch(event.getEventType()){
             case GOTO_MENU_MAIN_MENU:
                 //Display Main Menu
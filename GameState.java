@@ -0,0 +1,584 @@
+/*
+ * GameState is a compact copy of the Tubes in a Level that the solver searches over.
+ * Each Tube is stored as a fill count followed by one byte per slot, and every Tube is packed
+ * into a single byte array. Copying a state is one small array instead of a Tube, Block,
+ * Rectangle and Color for every slot.
+ *
+ * The checks run on every state a search reaches (top run size, solved Tubes and the lower bound) read a Tube's
+ * slots 8 at a time as one long and compare all 8 Blocks with a few bit operations, instead of one Block at a time.
+ * Tubes with more than 8 slots use the Block at a time loops. Run with -DscalarKernels=true to always use them.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class GameState {
+    // Random number for every (height in Tube, color) pair. A Tube's hash is the XOR of the numbers for its Blocks.
+    // Color 0 is never stored in a slot, so ZOBRIST[capacity][0] is used to tell Tubes of different sizes apart.
+    // The seed is fixed so hashes are the same every time the game runs.
+    private static final long[][] ZOBRIST = new long[128][16];
+    static {
+        SplittableRandom random = new SplittableRandom(240L);
+        for(long[] row : ZOBRIST){
+            for(int i = 0; i < row.length; i++){
+                row[i] = random.nextLong();
+            }
+        }
+    }
+
+    // Reading 8 slots at once as a long. The first slot is the lowest byte
+    private static final VarHandle SLOTS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final boolean SCALAR_KERNELS = Boolean.getBoolean("scalarKernels");
+    private static final int PADDING = 8; // Bytes after the last Tube so its 8 slots can be read as a long
+    private static final long ONES = 0x0101010101010101L; // 1 in every byte
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL; // Low 7 bits of every byte
+    private static final long HIGH_BITS = 0x8080808080808080L; // High bit of every byte
+
+    private final int tubeCount;
+    private final int stride; // Bytes used by each Tube: 1 for the fill count + 1 per slot
+    private final int[] capacity; // Max capacity of each Tube. Shared by every copy of the same Level
+    private final byte[] data; // [fill, bottom block, ..., top block, empty slots] for each Tube, then PADDING
+    private final boolean wordKernels; // Every Tube fits in a long and scalar kernels were not asked for
+    private long hash; // Canonical hash, kept up to date as Blocks move so it never has to be recomputed
+    private int[] solvedTubes; // Tubes each color fills when solved, or null if not found yet or Tubes differ in size.
+                               // Moves do not change it, so copies share it
+    private volatile boolean solvedTubesKnown; // Set after solvedTubes, so a thread that sees it true also sees the counts
+
+    // Create a GameState from the Tubes of a Level
+    public GameState(ArrayList<Tube> tubeList) {
+        tubeCount = tubeList.size();
+        capacity = new int[tubeCount];
+        int maxCapacity = 0;
+        for(int i = 0; i < tubeCount; i++){
+            Tube tube = tubeList.get(i);
+            capacity[i] = tube.getFillAmt() + tube.getEmptySpace();
+            maxCapacity = Math.max(maxCapacity, capacity[i]);
+        }
+        stride = maxCapacity + 1;
+        data = new byte[tubeCount * stride + PADDING];
+        wordKernels = !SCALAR_KERNELS && maxCapacity <= 8;
+
+        for(int i = 0; i < tubeCount; i++){
+            for(Block block : tubeList.get(i).getTube()){
+                push(i, toColorCode(block));
+            }
+        }
+        hash = computeHash();
+    }
+
+    // Create a GameState of empty Tubes that all have the same capacity
+    public GameState(int tubeCount, int capacity) {
+        this.tubeCount = tubeCount;
+        this.capacity = new int[tubeCount];
+        Arrays.fill(this.capacity, capacity);
+        stride = capacity + 1;
+        data = new byte[tubeCount * stride + PADDING];
+        wordKernels = !SCALAR_KERNELS && capacity <= 8;
+        hash = computeHash();
+    }
+
+    // Copy another GameState. Only the byte array is copied, the Tube capacities are shared
+    private GameState(GameState other) {
+        tubeCount = other.tubeCount;
+        stride = other.stride;
+        capacity = other.capacity;
+        data = other.data.clone();
+        wordKernels = other.wordKernels;
+        hash = other.hash;
+        solvedTubes = other.solvedTubes;
+        solvedTubesKnown = other.solvedTubesKnown;
+    }
+
+    // Return a copy of this GameState by value
+    public GameState copy() {
+        return new GameState(this);
+    }
+
+    // Convert a Block into the code stored in a slot. Empty slots are 0, Block 'A' is 1, 'B' is 2...
+    public static byte toColorCode(Block block) {
+        return (byte) (block.getId() - 'A' + 1);
+    }
+
+    // Convert a slot code back into the letter used to identify Blocks in files
+    public static char toColorId(byte code) {
+        return (char) ('A' + code - 1);
+    }
+
+    public int getTubeCount() {
+        return tubeCount;
+    }
+
+    public int getCapacity(int tube) {
+        return capacity[tube];
+    }
+
+    public int getFillAmt(int tube) {
+        return data[tube * stride];
+    }
+
+    public int getEmptySpace(int tube) {
+        return capacity[tube] - data[tube * stride];
+    }
+
+    public boolean isEmpty(int tube) {
+        return data[tube * stride] == 0;
+    }
+
+    public boolean isFull(int tube) {
+        return data[tube * stride] == capacity[tube];
+    }
+
+    // Number of different colors in all the Tubes
+    public int getColorCount() {
+        boolean[] present = new boolean[16];
+        int count = 0;
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            for(int j = 1; j <= data[base]; j++){
+                if(!present[data[base + j]]){
+                    present[data[base + j]] = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Get the Block at this height in the Tube. 0 is the bottom of the Tube
+    public byte getBlock(int tube, int index) {
+        return data[tube * stride + 1 + index];
+    }
+
+    // Get the top Block of the Tube. Returns 0 if the Tube is empty
+    public byte viewTopBlock(int tube) {
+        int base = tube * stride;
+        return data[base + data[base]];
+    }
+
+    // Number of Blocks of the same color at the top of the Tube
+    public int getTopColorSize(int tube) {
+        int base = tube * stride;
+        if(wordKernels){
+            int fill = data[base];
+            if(fill == 0){
+                return 0;
+            }
+            // Slots that match the top color become 0 bytes. Shift the top slot up to the highest byte,
+            // then the run is the number of 0 bytes from the top down
+            long slots = (long) SLOTS.get(data, base + 1);
+            long diff = (slots ^ (data[base + fill] * ONES)) << (8 * (8 - fill));
+            return Math.min(fill, Long.numberOfLeadingZeros(diff) >>> 3);
+        }
+        int top = base + data[base];
+        byte topColor = data[top];
+        int count = 0;
+        while(top > base && data[top] == topColor){
+            top--;
+            count++;
+        }
+        return count;
+    }
+
+    // Adds a Block to the top of the Tube, assumes it is not going over max capacity
+    public void addBlock(int tube, byte color) {
+        long oldTubeHash = tubeHash(tube);
+        solvedTubesKnown = false;
+        push(tube, color);
+        hash += mix(tubeHash(tube)) - mix(oldTubeHash);
+    }
+
+    // Removes the top Block of the Tube and returns it
+    public byte removeTopBlock(int tube) {
+        long oldTubeHash = tubeHash(tube);
+        solvedTubesKnown = false;
+        byte color = pop(tube);
+        hash += mix(tubeHash(tube)) - mix(oldTubeHash);
+        return color;
+    }
+
+    // Add a Block without updating the hash
+    private void push(int tube, byte color) {
+        int base = tube * stride;
+        data[base]++;
+        data[base + data[base]] = color;
+    }
+
+    // Remove the top Block without updating the hash
+    private byte pop(int tube) {
+        int base = tube * stride;
+        int top = base + data[base];
+        byte color = data[top];
+        data[top] = 0;
+        data[base]--;
+        return color;
+    }
+
+    // Returns true if the Tube is empty or full of a single color
+    public boolean isTubeSolved(int tube) {
+        if(isEmpty(tube)){
+            return true;
+        }
+        if(!isFull(tube)){
+            return false;
+        }
+        return getTopColorSize(tube) == capacity[tube];
+    }
+
+    // Check to see if moving the top Blocks of one Tube onto another Tube is allowed and is good
+    public boolean isValidMove(int from, int to) {
+        // Cannot move from the same tube to the same tube
+        if(from == to){
+            return false;
+        }
+
+        // Cannot remove from an empty tube or add to a full tube
+        if(isEmpty(from) || isFull(to)){
+            return false;
+        }
+
+        // All blocks of same color must move together
+        // Check if enough space to fit all the blocks of the same color in the new Tube
+        int topColorSize = getTopColorSize(from);
+        if(getEmptySpace(to) < topColorSize){
+            return false;
+        }
+
+        // Do not move blocks to an empty tube if there is only 1 type in the current tube
+        if(isEmpty(to)){
+            return topColorSize != getFillAmt(from);
+        }
+
+        // Can only move a block onto the same type
+        return viewTopBlock(from) == viewTopBlock(to);
+    }
+
+    // Copy this GameState and move all the top Blocks of the same color from one Tube to another Tube
+    public GameState moveBlock(int from, int to) {
+        GameState newState = copy();
+        newState.apply(from, to);
+        return newState;
+    }
+
+    // Move all the top Blocks of the same color from one Tube to another Tube in place.
+    // Returns the number of Blocks moved so the move can be undone.
+    // Nothing is allocated, and the hash is updated from only the two Tubes that changed.
+    public int apply(int from, int to) {
+        int count = getTopColorSize(from);
+        moveBlocks(from, to, count);
+        return count;
+    }
+
+    // Undo a move made by apply by moving the same number of Blocks back
+    public void undo(int from, int to, int count) {
+        moveBlocks(to, from, count);
+    }
+
+    // Move count Blocks from the top of one Tube to another and update the hash.
+    // Each Block toggles its Zobrist number out of one Tube's hash and into the other's.
+    private void moveBlocks(int from, int to, int count) {
+        long fromHash = tubeHash(from);
+        long toHash = tubeHash(to);
+        long oldMix = mix(fromHash) + mix(toHash);
+        for(int i = 0; i < count; i++){
+            int fromHeight = data[from * stride];
+            byte color = pop(from);
+            fromHash ^= ZOBRIST[fromHeight - 1][color];
+            push(to, color);
+            toHash ^= ZOBRIST[data[to * stride] - 1][color];
+        }
+        hash += mix(fromHash) + mix(toHash) - oldMix;
+    }
+
+    // Check if all Blocks have been sorted: every Tube is empty or full of a single color
+    public boolean isSolved() {
+        for(int i = 0; i < tubeCount; i++){
+            if(!isTubeSolved(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Lower bound on the number of moves left to solve this GameState. Never overestimates, so A* and IDA*
+    // searches using it find shortest solutions.
+    // 1) Every run of a color that sits on top of a different color has to move at least once,
+    //    and a move only ever picks up a single run.
+    // 2) If a color is the bottom run of more Tubes than it will fill when solved, all but those Tubes' runs must move.
+    public int lowerBound() {
+        int moves = 0;
+        int[] bottomRuns = new int[16];
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            int fill = data[base];
+            if(fill == 0){
+                continue;
+            }
+            bottomRuns[data[base + 1]]++;
+            moves += colorChanges(base, fill);
+        }
+
+        // Only count bottom runs when every Tube is the same size, so the number of Tubes a color fills is known
+        int[] tubesFilled = getSolvedTubes();
+        if(tubesFilled == null){
+            return moves;
+        }
+        for(int color = 1; color < bottomRuns.length; color++){
+            if(bottomRuns[color] > tubesFilled[color]){
+                moves += bottomRuns[color] - tubesFilled[color];
+            }
+        }
+        return moves;
+    }
+
+    // Number of places in a Tube where a Block sits on a different color
+    private int colorChanges(int base, int fill) {
+        if(wordKernels){
+            // Byte j of changed is slot j XOR slot j + 1, which is not 0 where the color changes.
+            // Setting the high bit of each byte that is not 0 lets one bitCount count them
+            long slots = (long) SLOTS.get(data, base + 1);
+            long changed = slots ^ (slots >>> 8);
+            long nonZero = (((changed & LOW_BITS) + LOW_BITS) | changed) & HIGH_BITS;
+            long pairs = fill == 1 ? 0 : -1L >>> (64 - 8 * (fill - 1)); // The fill - 1 pairs of Blocks in the Tube
+            return Long.bitCount(nonZero & pairs);
+        }
+        int changes = 0;
+        for(int j = base + 2; j <= base + fill; j++){
+            if(data[j] != data[j - 1]){
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    // Tubes each color fills when solved, or null if the Tubes are not all the same size.
+    // Moves never change how many Blocks of each color there are, so this is only counted once
+    private int[] getSolvedTubes() {
+        if(solvedTubesKnown){
+            return solvedTubes;
+        }
+        int size = capacity[0];
+        for(int c : capacity){
+            if(c != size){
+                solvedTubes = null;
+                solvedTubesKnown = true;
+                return null;
+            }
+        }
+        int[] colorCount = new int[16];
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            for(int j = 1; j <= data[base]; j++){
+                colorCount[data[base + j]]++;
+            }
+        }
+        int[] tubesFilled = new int[16];
+        for(int color = 1; color < tubesFilled.length; color++){
+            tubesFilled[color] = (colorCount[color] + size - 1) / size;
+        }
+        solvedTubes = tubesFilled;
+        solvedTubesKnown = true;
+        return tubesFilled;
+    }
+
+    // Hash of a single Tube's contents. Does not depend on where the Tube is in the Level
+    public long tubeHash(int tube) {
+        int base = tube * stride;
+        long result = ZOBRIST[capacity[tube]][0];
+        for(int i = 1; i <= data[base]; i++){
+            result ^= ZOBRIST[i - 1][data[base + i]];
+        }
+        return result;
+    }
+
+    // 64-bit hash of the whole GameState that ignores Tube order.
+    // Tube hashes are mixed and then added together, and addition gives the same result in any order,
+    // so a move only has to take out the old hashes of its two Tubes and add their new ones.
+    public long canonicalHash() {
+        return hash;
+    }
+
+    // Compute the canonical hash from every Tube
+    private long computeHash() {
+        long result = 0;
+        for(int i = 0; i < tubeCount; i++){
+            result += mix(tubeHash(i));
+        }
+        return result;
+    }
+
+    // Spread the bits of a Tube hash so that summing Tube hashes does not cancel out (SplitMix64 finalizer)
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Number of bytes written by writeCanonicalKey and writeSymmetricKey
+    public int getCanonicalKeyLength() {
+        return tubeCount * (stride + 1);
+    }
+
+    // Write every Tube's capacity and contents into out, with Tubes sorted so Tube order is ignored.
+    // Two GameStates write the same key exactly when they are the same up to Tube order.
+    public void writeCanonicalKey(byte[] out, int offset) {
+        // Insertion sort Tube indexes by their bytes. Levels have few Tubes
+        int[] order = new int[tubeCount];
+        for(int i = 0; i < tubeCount; i++){
+            int j = i;
+            while(j > 0 && compareTubes(order[j - 1], i) > 0){
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        for(int tube : order){
+            out[offset++] = (byte) capacity[tube];
+            System.arraycopy(data, tube * stride, out, offset, stride);
+            offset += stride;
+        }
+    }
+
+    // Compare two Tubes by capacity, then fill, then Blocks from the bottom up
+    private int compareTubes(int a, int b) {
+        if(capacity[a] != capacity[b]){
+            return Integer.compare(capacity[a], capacity[b]);
+        }
+        return Arrays.compare(data, a * stride, a * stride + stride, data, b * stride, b * stride + stride);
+    }
+
+    // Write a key that ignores Tube order and also which letter each color has.
+    // Two GameStates that only differ by swapping colors everywhere (A<->B) write the same key.
+    // Colors are renamed by a signature built from where their Blocks sit, which does not depend on the letters,
+    // then the renamed Tubes are sorted. Colors with equal signatures keep their letter order, so some
+    // symmetric states may still get different keys, but two states with the same key are always symmetric.
+    public void writeSymmetricKey(byte[] out, int offset) {
+        long[] signature = colorSignatures();
+        boolean[] present = new boolean[signature.length];
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            for(int j = 1; j <= data[base]; j++){
+                present[data[base + j]] = true;
+            }
+        }
+
+        // Rank the colors in the Level by signature
+        int[] colors = new int[signature.length];
+        int colorCount = 0;
+        for(int color = 1; color < signature.length; color++){
+            if(!present[color]){
+                continue;
+            }
+            int j = colorCount++;
+            while(j > 0 && signature[colors[j - 1]] > signature[color]){
+                colors[j] = colors[j - 1];
+                j--;
+            }
+            colors[j] = color;
+        }
+        byte[] label = new byte[signature.length];
+        for(int i = 0; i < colorCount; i++){
+            label[colors[i]] = (byte) (i + 1);
+        }
+
+        // Rename every Block, then sort the renamed Tubes the same way writeCanonicalKey does
+        GameState renamed = copy();
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            for(int j = 1; j <= data[base]; j++){
+                renamed.data[base + j] = label[data[base + j]];
+            }
+        }
+        renamed.writeCanonicalKey(out, offset);
+    }
+
+    // Signature of every color that does not depend on its letter.
+    // First each color adds up the height, Tube fill and neighbours of its Blocks, then each color also adds in
+    // the first signature of the color under each of its Blocks to tell apart colors that sit in similar places.
+    private long[] colorSignatures() {
+        long[] first = new long[16];
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            int fill = data[base];
+            for(int j = 1; j <= fill; j++){
+                int sameBelow = j > 1 && data[base + j - 1] == data[base + j] ? 2 : 0;
+                int sameAbove = j < fill && data[base + j + 1] == data[base + j] ? 1 : 0;
+                first[data[base + j]] += mix(((long) capacity[i] << 24) | (fill << 16) | (j << 8) | sameBelow | sameAbove);
+            }
+        }
+        long[] signature = new long[16];
+        for(int i = 0; i < tubeCount; i++){
+            int base = i * stride;
+            for(int j = 1; j <= data[base]; j++){
+                long below = j > 1 ? first[data[base + j - 1]] : 0;
+                signature[data[base + j]] += mix(first[data[base + j]] ^ (below * 31 + j));
+            }
+        }
+        return signature;
+    }
+
+    // 64-bit hash that ignores Tube order and color letters. Builds the symmetric key, so it costs more than canonicalHash
+    public long symmetricHash() {
+        byte[] key = new byte[getCanonicalKeyLength()];
+        writeSymmetricKey(key, 0);
+        return hashKey(key, 0, key.length);
+    }
+
+    // 64-bit hash of a key written by writeCanonicalKey or writeSymmetricKey
+    public static long hashKey(byte[] key, int offset, int length) {
+        long result = 0xcbf29ce484222325L;
+        for(int i = offset; i < offset + length; i++){
+            result = (result ^ key[i]) * 0x100000001b3L;
+        }
+        return mix(result);
+    }
+
+    // Convert a Tube into the same text used in level files. Example: "AB--"
+    public String tubeToString(int tube) {
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < getFillAmt(tube); i++){
+            result.append(toColorId(getBlock(tube, i)));
+        }
+        result.append("-".repeat(getEmptySpace(tube)));
+        return result.toString();
+    }
+
+    // Convert this GameState back into Tubes of Blocks
+    public ArrayList<Tube> toTubeList() {
+        ArrayList<Tube> tubeList = new ArrayList<>();
+        for(int i = 0; i < tubeCount; i++){
+            Tube tube = new Tube(capacity[i]);
+            for(int j = 0; j < getFillAmt(i); j++){
+                tube.addBlock(new Block(toColorId(getBlock(i, j))));
+            }
+            tubeList.add(tube);
+        }
+        return tubeList;
+    }
+
+    // Two GameStates are equal if every Tube holds the same Blocks in the same order
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof GameState other)){
+            return false;
+        }
+        return Arrays.equals(data, other.data) && Arrays.equals(capacity, other.capacity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(data);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for(int i = 0; i < tubeCount; i++){
+            result.append(tubeToString(i)).append("\n");
+        }
+        return result.toString();
+    }
+}
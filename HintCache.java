@@ -0,0 +1,64 @@
+/*
+ * HintCache remembers the solutions found for hints so later hints on the same Level are instant lookups.
+ * Every game state along a found solution is stored with the next move to make from it,
+ * so as long as the player stays on (or returns to) that path no search is needed.
+ * Only the most recently used Levels are kept. The least recently used Level is dropped when the cache is full.
+ * Visited states are not kept, since a branch that failed from one start state may still solve from another.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class HintCache {
+    private final int maxLevels; // Number of Levels kept before the least recently used is dropped
+    private final int maxStatesPerLevel; // A Level's states are cleared when it grows past this
+    private final LinkedHashMap<Integer, HashMap<GameState, Point>> levels;
+
+    public HintCache(int maxLevels, int maxStatesPerLevel) {
+        this.maxLevels = maxLevels;
+        this.maxStatesPerLevel = maxStatesPerLevel;
+
+        // Access order keeps the least recently used Level first so it can be removed
+        levels = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, HashMap<GameState, Point>> eldest) {
+                return size() > HintCache.this.maxLevels;
+            }
+        };
+    }
+
+    // Next move on a known solution from this exact game state, or null if the state is not on one.
+    // States are compared with Tube order, because moves are Tube indexes in the Level.
+    public synchronized Point getNextMove(int levelId, GameState state) {
+        HashMap<GameState, Point> states = levels.get(levelId);
+        if(states == null){
+            return null;
+        }
+        return states.get(state);
+    }
+
+    // Remember a solution: walk the moves from the start state and store the next move for every state on the way
+    public synchronized void addSolution(int levelId, GameState start, ArrayList<Point> moves) {
+        HashMap<GameState, Point> states = levels.computeIfAbsent(levelId, id -> new HashMap<>());
+        if(states.size() + moves.size() > maxStatesPerLevel){
+            states.clear();
+        }
+        GameState state = start.copy();
+        for(Point move : moves){
+            states.put(state, move);
+            state = state.moveBlock(move.x, move.y);
+        }
+    }
+
+    // Forget every solution for a Level
+    public synchronized void removeLevel(int levelId) {
+        levels.remove(levelId);
+    }
+
+    public synchronized int size() {
+        return levels.size();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * IdaSearch runs the passes of IDA* (Iterative Deepening A*) for OptimalSolver and AnytimeSolver.
+ * Each pass is a Depth-First search that cuts off any branch where the moves made so far plus
+ * GameState.lowerBound() go over the bound. Moves are applied to one GameState in place and undone on the way
+ * back, so the state is at the start again after every pass. The moves to the state being searched are kept in
+ * arrays, so a Listener can read them at every state the pass reaches.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class IdaSearch {
+    public static final int FOUND = -1; // Returned by pass when a solution is found
+
+    // Told about every state a pass reaches after the start, with its moves from the start and lower bound
+    public interface Listener {
+        void reached(int moves, int lowerBound);
+    }
+
+    private final GameState state; // Searched in place
+    private final VisitedTable searchHistory; // Fewest moves each game state was reached with during the current pass
+    private final Listener listener; // null if nothing needs to know about the states reached
+    private SearchControl control;
+    private SolverMetrics metrics;
+    private ArrayList<MoveGenerator> generators = new ArrayList<>(); // Legal moves at each depth of the search
+    private int[] pathFrom = new int[64]; // Moves from the start state to the state being searched
+    private int[] pathTo = new int[64];
+    private ArrayList<Point> solution = new ArrayList<>(); // Moves of the solution once a pass finds one
+
+    public IdaSearch(GameState state, VisitedTable searchHistory, Listener listener) {
+        this.state = state;
+        this.searchHistory = searchHistory;
+        this.listener = listener;
+    }
+
+    // Search one pass with this bound, counting the work in metrics.
+    // Returns FOUND if a solution was found, otherwise the smallest moves + lower bound that went over the bound.
+    // Integer.MAX_VALUE means no branch went over it, or control said to stop
+    public int pass(int bound, SearchControl control, SolverMetrics metrics) {
+        this.control = control;
+        this.metrics = metrics;
+        metrics.visitedSize(searchHistory.size());
+        searchHistory.clear();
+        searchHistory.addIfLower(state, 0);
+        return search(0, bound, -1, -1, 0);
+    }
+
+    // The first moves of the path to the state being searched. Only meaningful while a Listener is being told
+    public ArrayList<Point> getPath(int moves) {
+        ArrayList<Point> path = new ArrayList<>();
+        for(int d = 0; d < moves; d++){
+            path.add(new Point(pathFrom[d], pathTo[d]));
+        }
+        return path;
+    }
+
+    // Every move of the solution the last pass found in order, or an empty list
+    public ArrayList<Point> getSolution() {
+        return solution;
+    }
+
+    // Depth First search cut off at the bound. The last move is passed on so MoveGenerator can leave out
+    // moves that undo it or could have been made before it
+    private int search(int moves, int bound, int lastFrom, int lastTo, int lastCount) {
+        int lowerBound = state.lowerBound();
+        if(listener != null && moves > 0){
+            listener.reached(moves, lowerBound);
+        }
+        int estimate = moves + lowerBound;
+        if(estimate > bound){
+            return estimate;
+        }
+        if(state.isSolved()){
+            solution = getPath(moves);
+            return FOUND;
+        }
+        if(control.shouldStop()){
+            return Integer.MAX_VALUE;
+        }
+
+        int smallest = Integer.MAX_VALUE;
+        MoveGenerator generator = MoveGenerator.forDepth(generators, moves, state.getTubeCount());
+        int moveCount = generator.generate(state, lastFrom, lastTo, lastCount);
+        metrics.expand();
+        metrics.generate(moveCount);
+        for(int m = 0; m < moveCount; m++){
+            int i = generator.getFrom(m);
+            int j = generator.getTo(m);
+            int count = state.apply(i, j);
+
+            // Skip states already reached in this pass with the same number of moves or fewer
+            if(!searchHistory.addIfLower(state, moves + 1)){
+                metrics.duplicate();
+                state.undo(i, j, count);
+                continue;
+            }
+            metrics.reachDepth(moves + 1);
+            if(moves == pathFrom.length){
+                pathFrom = Arrays.copyOf(pathFrom, moves * 2);
+                pathTo = Arrays.copyOf(pathTo, moves * 2);
+            }
+            pathFrom[moves] = i;
+            pathTo[moves] = j;
+
+            int result = search(moves + 1, bound, i, j, count);
+            state.undo(i, j, count);
+            if(result == FOUND){
+                return FOUND;
+            }
+            smallest = Math.min(smallest, result);
+        }
+        return smallest;
+    }
+}
@@ -14,12 +14,43 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 // JComponent allows this class to be drawn in the JFrame that is created in Game.
 // GameEventListener allows this class to get notified when a Button is clicked
 // if the Button adds the Level as a Listener.
 public class Level extends JComponent implements GameEventListener{
 
+    // Precomputed solutions for the shipped Levels, written by the SolveAll tool
+    private static final SolutionDatabase solutionDatabase = SolutionDatabase.load("levels/levels.sol");
+
+    // Solutions found by hint() for the most recently played Levels
+    private static final HintCache hintCache = new HintCache(8, 4096);
+
+    // Hints are searched on this background thread so the window keeps responding while the solver runs
+    private static final ExecutorService hintExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Hint Solver");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final long HINT_TIMELIMIT = 750L; // Time in ms a hint may take before the best move so far is used
+    private static final long HINT_OPTIMAL_TIMELIMIT = 500L; // Part of it spent looking for a shortest solution
+
+    // After every move the next hint is searched early on this low priority thread and stored in hintCache,
+    // so it is usually ready before the Hint Button is pressed
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Hint Prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static final long PREFETCH_TIMELIMIT = 10000L; // Time in ms allowed to search ahead for a hint
+    private static final double PREFETCH_CPU_SHARE = 0.5; // Share of one core the prefetch search may use
+    private static volatile boolean hintPrefetch = true; // Turned off by tools that make many moves, like SolverBenchmark
+
     private int id; // Level number
     private int bestScore;
     private int currentScore;
@@ -27,6 +58,11 @@ public class Level extends JComponent implements GameEventListener{
     private ArrayList<Tube> initialTubes;
     private ArrayList<Tube> moveList;
     private boolean isSavedLevel = false;
+    private Button hintButton; // Shows "Thinking..." while a hint is being searched
+    private CompletableFuture<Point> pendingHint; // Hint being searched in the background. null if none
+    private SearchControl hintControl; // Cancels the hint being searched
+    private SearchControl prefetchControl; // Cancels the hint being searched ahead of time
+    private DeadlockDetector deadlockDetector; // Tells when no moves are left or the Level can no longer be solved
 
     public Level(int id){
         this.id = id;
@@ -35,6 +71,7 @@ public class Level extends JComponent implements GameEventListener{
 
         tubeList = new ArrayList<>();
         initialTubes = new ArrayList<>();
+        deadlockDetector = new DeadlockDetector(tubeList);
         // Null Layout allows Components like Buttons to be drawn anywhere.
         setLayout(null);
     }
@@ -77,6 +114,7 @@ public class Level extends JComponent implements GameEventListener{
             tubeList.add(tube);
         }
         assignTubeShape();
+        deadlockDetector = new DeadlockDetector(tubeList);
 
         // Create a backup of the initial state of the Tubes for Restarting the Level
         for(Tube tube : tubeList){
@@ -105,6 +143,14 @@ public class Level extends JComponent implements GameEventListener{
         g.setFont(new Font(Font.DIALOG, Font.PLAIN, 14));
         g.drawString("Best Score:  "+ bestScore, 350, 55);
         g.drawString("Current Score:  "+ currentScore, 340, 72);
+        if(deadlockDetector.getStatus() == DeadlockDetector.Status.STUCK){
+            g.setColor(Color.RED);
+            g.drawString("No moves left. Undo or Restart", 300, 92);
+        }
+        else if(deadlockDetector.getStatus() == DeadlockDetector.Status.UNSOLVABLE){
+            g.setColor(Color.RED);
+            g.drawString("This Level can no longer be solved. Undo or Restart", 235, 92);
+        }
         for (int i = 0; i < tubeList.size(); i++){ //goes through every tube in tubeList
             Rectangle temp = tubeList.get(i).getShape();
             tubeList.get(i).assignBlockShape(); //assigns x,y,width,height coordinates for each block in a tube
@@ -151,6 +197,7 @@ public class Level extends JComponent implements GameEventListener{
         if (start.isEmpty()){ //cannot move if no objects exist
             return;
         }
+        cancelHint(); // a hint searched for the old state no longer applies
         int endSpace = end.getEmptySpace();
         Color startColor = start.viewTopBlock().getColor();
         Block tempBlock = end.viewTopBlock();
@@ -171,6 +218,8 @@ public class Level extends JComponent implements GameEventListener{
 
             }
             currentScore += 1;
+            deadlockDetector.update(start, end);
+            prefetchHint();
         } else {
             System.out.println("Color could not be moved");
         }
@@ -178,6 +227,7 @@ public class Level extends JComponent implements GameEventListener{
 
     //undo blocks one by one
     public void undo(){
+        cancelHint();
         if (!moveList.isEmpty()) {
             Tube start = moveList.remove(moveList.size() - 1); //get last item (which is the end of the last move)
             Tube end = moveList.remove(moveList.size() - 1); //start of last move
@@ -191,6 +241,8 @@ public class Level extends JComponent implements GameEventListener{
                 end.addBlock(temp);
             }
             //score not decreased, user punished for undo
+            deadlockDetector.update(start, end);
+            prefetchHint();
         } else {
             System.out.println("There is no more moves to undo");
         }
@@ -198,27 +250,204 @@ public class Level extends JComponent implements GameEventListener{
 
     // Reset Level back to initial state and clear score
     public void restart(){
+        cancelHint();
         currentScore = 0;
         moveList.clear();
         tubeList.clear();
         for(Tube tube : initialTubes){
             tubeList.add(tube.clone());
         }
+        deadlockDetector.reset(tubeList);
+    }
+
+    // Attempt to find a shortest solution to this Level in its current form and make the next best move.
+    // The search runs on a background thread and the move is made on the Swing thread when it finishes.
+    // Returns the hint being searched, which completes with the move or null if no solution was found.
+    public CompletableFuture<Point> hint(){
+        // Only search for one hint at a time
+        if(pendingHint != null){
+            return pendingHint;
+        }
+
+        // Look for a precomputed or cached solution first, so hints along a known solution do not search again
+        GameState state = new GameState(tubeList);
+        Point cached = getKnownMove(state);
+        if(cached != null){
+            moveBlock(tubeList.get(cached.x), tubeList.get(cached.y));
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Search at full speed instead of waiting for the throttled prefetch
+        cancelPrefetch();
+        SearchControl control = new SearchControl(HINT_TIMELIMIT);
+        CompletableFuture<Point> future = CompletableFuture.supplyAsync(() -> findHint(state, control), hintExecutor);
+        hintControl = control;
+        pendingHint = future;
+        if(hintButton != null){
+            hintButton.setLine2("Thinking...");
+        }
+        future.whenComplete((hint, error) -> SwingUtilities.invokeLater(() -> finishHint(future, hint, error)));
+        return future;
+    }
+
+    // Next move from the solution database, a retrograde table for this Level's shape or the hint cache,
+    // or null if this state needs a search
+    private Point getKnownMove(GameState state){
+        Point move = solutionDatabase.getNextMove(state);
+        if(move == null){
+            RetrogradeTable table = RetrogradeTable.forState(state);
+            if(table != null){
+                move = table.getBestMove(state);
+            }
+        }
+        if(move == null){
+            move = hintCache.getNextMove(id, state);
+        }
+        return move;
+    }
+
+    // Search for the next move from this state within HINT_TIMELIMIT: a shortest solution first, then any solution
+    // from a SolverPortfolio race, and if neither is found in time the move the anytime search got closest to
+    // solved with. Runs on the hint thread
+    private Point findHint(GameState state, SearchControl control){
+        AnytimeSolver anytimeSolver = new AnytimeSolver(state);
+        anytimeSolver.improve(control.limit(HINT_OPTIMAL_TIMELIMIT));
+        anytimeSolver.close();
+        ArrayList<Point> solution = new ArrayList<>();
+        if(anytimeSolver.isSolved()){
+            solution = anytimeSolver.getMoveList();
+        }
+        else if(!anytimeSolver.isFinished() && !control.shouldStop()){
+            solution = new SolverPortfolio(state, control).getMoveList();
+        }
+        if(control.isCancelled()){
+            return null;
+        }
+        if(!solution.isEmpty()){
+            hintCache.addSolution(id, state, solution);
+            return solution.getFirst();
+        }
+
+        // No solution: log what the search and every search so far did to help size the time limit. If time ran out,
+        // use the move that got closest to solved
+        SolverMetrics metrics = anytimeSolver.getMetrics();
+        if(metrics.isStopped()){
+            System.out.println("Hint for Level " + id + " timed out. " + metrics);
+        }
+        else{
+            System.out.println("Hint for Level " + id + " found that this state cannot be solved. " + metrics);
+        }
+        System.out.println("Totals so far: " + SolverMetrics.getTotals());
+        return anytimeSolver.getNextMove();
+    }
+
+    // Try a shortest solution first. If none is found in time, fall back to any solution found by
+    // Depth-First search with the time that is left.
+    // Solutions are added to hintCache. Returns an empty list if no solution was found or the search was cancelled.
+    private ArrayList<Point> findSolution(GameState state, SearchControl control){
+        OptimalSolver optimalSolver = new OptimalSolver(state, control.limit(2000L));
+        ArrayList<Point> solution = optimalSolver.getMoveList();
+        if(solution.isEmpty() && !control.shouldStop()){
+            solution = new SolveLevel(state, control).getMoveList();
+        }
+        if(solution.isEmpty() || control.isCancelled()){
+            return new ArrayList<>();
+        }
+        hintCache.addSolution(id, state, solution);
+        return solution;
     }
 
-    // Attempt to find a solution to this Level in its current form and make the next best move
-    public void hint(){
-        SolveLevel solveLevel = new SolveLevel(this);
-        Point hint = solveLevel.getNextMove();
+    // Start searching for the next hint in the background after the player moves.
+    // Any earlier prefetch is for an old state, so it is cancelled first.
+    private void prefetchHint(){
+        cancelPrefetch();
+        if(!hintPrefetch){
+            return;
+        }
+        GameState state = new GameState(tubeList);
+        if(state.isSolved() || getKnownMove(state) != null){
+            return;
+        }
+        SearchControl control = new SearchControl(PREFETCH_TIMELIMIT);
+        prefetchControl = control;
+        prefetchExecutor.execute(() -> {
+            // Skip prefetches that were cancelled while waiting in the queue
+            if(!control.isCancelled()){
+                control.setCpuShare(PREFETCH_CPU_SHARE);
+                findSolution(state, control);
+            }
+        });
+    }
+
+    // Turn searching ahead for hints after every move on or off
+    public static void setHintPrefetch(boolean enabled){
+        hintPrefetch = enabled;
+    }
+
+    private void cancelPrefetch(){
+        if(prefetchControl != null){
+            prefetchControl.cancel();
+            prefetchControl = null;
+        }
+    }
+
+    // Make the hint move on the Swing thread once the search finishes, unless the hint was cancelled.
+    // error is the exception the search threw, or null if it finished normally
+    private void finishHint(CompletableFuture<Point> future, Point hint, Throwable error){
+        // A cancelled hint completes with a CancellationException, which is not a failure
+        if(error != null && !(error instanceof CancellationException)){
+            System.out.println("Hint for Level " + id + " failed. Totals so far: " + SolverMetrics.getTotals());
+            error.printStackTrace();
+        }
+        if(future != pendingHint){
+            return;
+        }
+        clearPendingHint();
+
         // If solution was found, make the next move, otherwise display popup window
         if(hint != null){
             moveBlock(tubeList.get(hint.x), tubeList.get(hint.y));
         }
+        else if(error != null){
+            JOptionPane.showMessageDialog(null, "The hint search failed", "Hint", JOptionPane.ERROR_MESSAGE);
+        }
         else{
             JOptionPane.showMessageDialog(null, "No Hints Available", "Hint", JOptionPane.WARNING_MESSAGE);
         }
     }
 
+    // Stop searching for a hint. Called when the player moves, undoes, restarts or leaves the Level
+    public void cancelHint(){
+        cancelPrefetch();
+        if(pendingHint != null){
+            hintControl.cancel();
+            pendingHint.cancel(false);
+            clearPendingHint();
+        }
+    }
+
+    private void clearPendingHint(){
+        pendingHint = null;
+        hintControl = null;
+        if(hintButton != null){
+            hintButton.setLine2("Hint");
+        }
+    }
+
+    public boolean isHintPending(){
+        return pendingHint != null;
+    }
+
+    // Whether the player can still move and still solve this Level
+    public DeadlockDetector.Status getStatus(){
+        return deadlockDetector.getStatus();
+    }
+
+    // Button that shows the progress of hints
+    public void setHintButton(Button hintButton){
+        this.hintButton = hintButton;
+    }
+
     //goes through all tubes in tubeList and sees if they are solved
     public boolean isSolved(){
         for (int i = 0; i < tubeList.size(); i++){
@@ -430,6 +659,7 @@ public class Level extends JComponent implements GameEventListener{
         }
         // Calculate Tube and Block sizes and positions for drawing
         assignTubeShape();
+        deadlockDetector.reset(tubeList);
 
     }
 
@@ -442,6 +672,7 @@ public class Level extends JComponent implements GameEventListener{
         for(Tube tube : tubeList){
             level.tubeList.add(tube.clone());
         }
+        level.deadlockDetector.reset(level.tubeList);
         return level;
     }
 }
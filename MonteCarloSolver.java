@@ -0,0 +1,310 @@
+/*
+ * Finds a solution to a Level that is too big to search exhaustively with Monte Carlo tree search.
+ * Every iteration walks down a tree of moves from the start state, picking the child with the best
+ * UCT score (its average reward plus a bonus for children tried less often), adds the moves of the
+ * state it reaches to the tree, and then plays a quick game from there: mostly the move to the state
+ * with the lowest GameState.lowerBound(), sometimes a random move. The reward of that game is how much
+ * closer to solved it got, and it is added to every node on the way back up, so later iterations go
+ * down the branches that have played out best.
+ * The search stops at the first game that ends solved. Solutions are not the shortest, but the tree
+ * never holds more than maxNodes nodes, so memory stays within a fixed budget however big the Level is.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+public class MonteCarloSolver implements Solver {
+    public static final int DEFAULT_ITERATIONS = 200000; // Iterations allowed before stopping
+    public static final int DEFAULT_MAX_NODES = 1 << 20; // Nodes the tree may hold
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+    private static final int PLAYOUT_DEPTH = 400; // Moves allowed in each quick game
+    private static final double RANDOM_MOVE_CHANCE = 0.2; // Chance a quick game makes a random move instead of the best one
+    private static final double EXPLORATION = 0.5; // Weight of the bonus for children tried less often
+
+    private ArrayList<Point> moveList; // Moves from the current state to the solution, in order. Empty if no solution is found
+    private boolean solved;
+    private SearchControl control; // Stops the search when time runs out or it is cancelled
+    private SplittableRandom random = new SplittableRandom(240L);
+    private MoveGenerator generator;
+    private SolverMetrics metrics = new SolverMetrics("Monte Carlo tree search"); // Counts the tree and quick games' moves
+    private StateTable playoutHistory = new StateTable(); // States of the current quick game, so it never goes in a circle
+    private int startBound; // Lower bound of the start state. A game that ends there has a reward of 0
+
+    // The tree. A node's children are made all at once, so they are next to each other in the arrays
+    private int maxNodes;
+    private int nodeCount;
+    private int[] firstChild; // -1 until the node's children are made
+    private int[] childCount;
+    private int[] moveFrom; // Move from the node's parent to the node
+    private int[] moveTo;
+    private int[] visits;
+    private double[] rewards; // Total reward of every game played through the node
+
+    // Moves from the start state to the node being searched, tree moves first and then the quick game's moves
+    private int[] pathFrom = new int[64];
+    private int[] pathTo = new int[64];
+    private int[] pathCount = new int[64];
+    private int pathSize;
+
+    public MonteCarloSolver(Level level) {
+        this(new GameState(level.getTubeList()));
+    }
+
+    public MonteCarloSolver(GameState state) {
+        this(state, new SearchControl(TIMELIMIT), DEFAULT_ITERATIONS, DEFAULT_MAX_NODES);
+    }
+
+    // Search for up to iterations games with a tree of at most maxNodes nodes, until the SearchControl says to stop
+    public MonteCarloSolver(GameState state, SearchControl control, int iterations, int maxNodes) {
+        this.control = control;
+        this.maxNodes = Math.max(1, maxNodes);
+        moveList = new ArrayList<>();
+        generator = new MoveGenerator(state.getTubeCount());
+        int arraySize = Math.min(this.maxNodes, 1024);
+        firstChild = new int[arraySize];
+        childCount = new int[arraySize];
+        moveFrom = new int[arraySize];
+        moveTo = new int[arraySize];
+        visits = new int[arraySize];
+        rewards = new double[arraySize];
+
+        startBound = Math.max(1, state.lowerBound());
+        // Search a copy since moves are applied to it in place
+        solved = state.isSolved() || solve(state.copy(), iterations);
+        if(solved){
+            removeLoops(state);
+        }
+        metrics.visitedSize(nodeCount);
+        metrics.finish(solved, moveList.size());
+    }
+
+    private boolean solve(GameState state, int iterations) {
+        nodeCount = 1;
+        firstChild[0] = -1;
+        for(int i = 0; i < iterations && !control.shouldStop(); i++){
+            pathSize = 0;
+            int node = select(state);
+            if(node < 0){
+                return false; // Every branch of the tree is stuck
+            }
+            double reward = state.isSolved() ? 1.0 : playout(state);
+            if(reward == 1.0){
+                for(int m = 0; m < pathSize; m++){
+                    moveList.add(new Point(pathFrom[m], pathTo[m]));
+                }
+                return true;
+            }
+            backPropagate(node, reward);
+            while(pathSize > 0){
+                pathSize--;
+                state.undo(pathFrom[pathSize], pathTo[pathSize], pathCount[pathSize]);
+            }
+        }
+        return false;
+    }
+
+    // Walk down from the root by UCT score, making the moves on the state, and add the children of the node
+    // reached if there is room. Returns the node to play a game from, or -1 if the root has no moves left
+    private int select(GameState state) {
+        int node = 0;
+        while(firstChild[node] >= 0){
+            double logVisits = Math.log(visits[node] + 1);
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for(int c = firstChild[node]; c < firstChild[node] + childCount[node]; c++){
+                // Children that have never been tried go first
+                if(visits[c] == 0){
+                    best = c;
+                    break;
+                }
+                // Children whose branch is stuck are skipped
+                if(rewards[c] < 0){
+                    continue;
+                }
+                double score = rewards[c] / visits[c] + EXPLORATION * Math.sqrt(logVisits / visits[c]);
+                if(score > bestScore){
+                    bestScore = score;
+                    best = c;
+                }
+            }
+            if(best < 0){
+                // Every child is stuck, so this node is too
+                rewards[node] = -1;
+                if(node == 0){
+                    return -1;
+                }
+                // Start again from the root now that this branch is marked
+                while(pathSize > 0){
+                    pathSize--;
+                    state.undo(pathFrom[pathSize], pathTo[pathSize], pathCount[pathSize]);
+                }
+                node = 0;
+                continue;
+            }
+            makeMove(state, moveFrom[best], moveTo[best]);
+            node = best;
+        }
+        expand(node, state);
+        return node;
+    }
+
+    // Add a child for every move from the node, if the tree has room for them
+    private void expand(int node, GameState state) {
+        if(state.isSolved()){
+            return;
+        }
+        int lastFrom = pathSize > 0 ? pathFrom[pathSize - 1] : -1;
+        int lastTo = pathSize > 0 ? pathTo[pathSize - 1] : -1;
+        int lastCount = pathSize > 0 ? pathCount[pathSize - 1] : 0;
+        int moveCount = generator.generate(state, lastFrom, lastTo, lastCount);
+        metrics.expand();
+        metrics.generate(moveCount);
+        if(nodeCount + moveCount > maxNodes){
+            return;
+        }
+        if(nodeCount + moveCount > firstChild.length){
+            int size = (int) Math.min(maxNodes, Math.max(nodeCount + moveCount, 2L * firstChild.length));
+            firstChild = Arrays.copyOf(firstChild, size);
+            childCount = Arrays.copyOf(childCount, size);
+            moveFrom = Arrays.copyOf(moveFrom, size);
+            moveTo = Arrays.copyOf(moveTo, size);
+            visits = Arrays.copyOf(visits, size);
+            rewards = Arrays.copyOf(rewards, size);
+        }
+        firstChild[node] = nodeCount;
+        childCount[node] = moveCount;
+        for(int m = 0; m < moveCount; m++){
+            int child = nodeCount++;
+            firstChild[child] = -1;
+            moveFrom[child] = generator.getFrom(m);
+            moveTo[child] = generator.getTo(m);
+            visits[child] = 0;
+            rewards[child] = 0;
+        }
+    }
+
+    // Play a quick game from the state. Returns 1 if it ends solved, otherwise how much closer to solved it got,
+    // from 0 for no closer than the start state. The moves stay on the path
+    private double playout(GameState state) {
+        playoutHistory.clear();
+        playoutHistory.add(state);
+        int best = state.lowerBound();
+        for(int move = 0; move < PLAYOUT_DEPTH; move++){
+            int moveCount = generator.generate(state);
+            metrics.expand();
+            metrics.generate(moveCount);
+            int bestMove = -1;
+            int bestBound = Integer.MAX_VALUE;
+            int choices = 0; // Moves to a new state seen so far, for picking one at random
+            boolean randomMove = random.nextDouble() < RANDOM_MOVE_CHANCE;
+            for(int m = 0; m < moveCount; m++){
+                int from = generator.getFrom(m);
+                int to = generator.getTo(m);
+                int count = state.apply(from, to);
+                boolean isNew = !playoutHistory.contains(state);
+                int bound = state.lowerBound();
+                state.undo(from, to, count);
+                if(!isNew){
+                    metrics.duplicate();
+                    continue;
+                }
+                choices++;
+                // A random move is picked evenly from the new states, the best move is the lowest bound
+                if(randomMove ? random.nextInt(choices) == 0 : bound < bestBound){
+                    bestMove = m;
+                    bestBound = bound;
+                }
+            }
+            if(bestMove < 0){
+                break;
+            }
+            makeMove(state, generator.getFrom(bestMove), generator.getTo(bestMove));
+            if(state.isSolved()){
+                return 1.0;
+            }
+            playoutHistory.add(state);
+            best = Math.min(best, state.lowerBound());
+        }
+        return Math.max(0.0, 1.0 - (double) best / startBound) * 0.99;
+    }
+
+    // Add the game's reward to the node and every node above it. Nodes are only reached from their parent,
+    // so the path's moves lead back up: the parent of a child is found by walking down the same moves again
+    private void backPropagate(int node, double reward) {
+        int current = 0;
+        visits[current]++;
+        rewards[current] += reward;
+        for(int depth = 0; current != node; depth++){
+            int c = firstChild[current];
+            while(moveFrom[c] != pathFrom[depth] || moveTo[c] != pathTo[depth]){
+                c++;
+            }
+            current = c;
+            visits[current]++;
+            rewards[current] += reward;
+        }
+    }
+
+    private void makeMove(GameState state, int from, int to) {
+        if(pathSize == pathFrom.length){
+            pathFrom = Arrays.copyOf(pathFrom, pathSize * 2);
+            pathTo = Arrays.copyOf(pathTo, pathSize * 2);
+            pathCount = Arrays.copyOf(pathCount, pathSize * 2);
+        }
+        pathFrom[pathSize] = from;
+        pathTo[pathSize] = to;
+        pathCount[pathSize] = state.apply(from, to);
+        pathSize++;
+        metrics.reachDepth(pathSize);
+    }
+
+    // Quick games can wander back to a state they passed through earlier on the path from the start.
+    // Cut out every move between the two visits, since they only lead back to the same state
+    private void removeLoops(GameState start) {
+        ArrayList<GameState> states = new ArrayList<>();
+        ArrayList<Point> moves = new ArrayList<>();
+        HashMap<GameState, Integer> position = new HashMap<>();
+        GameState state = start;
+        states.add(state);
+        position.put(state, 0);
+        for(Point move : moveList){
+            state = state.moveBlock(move.x, move.y);
+            Integer earlier = position.get(state);
+            if(earlier != null){
+                while(states.size() > earlier + 1){
+                    position.remove(states.removeLast());
+                    moves.removeLast();
+                }
+            }
+            else{
+                states.add(state);
+                moves.add(move);
+                position.put(state, states.size() - 1);
+            }
+        }
+        moveList = moves;
+    }
+
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // Number of moves in the solution, or -1 if no solution was found
+    public int getSolutionLength() {
+        return solved ? moveList.size() : -1;
+    }
+
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+}
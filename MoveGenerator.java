@@ -0,0 +1,179 @@
+/*
+ * MoveGenerator lists the legal moves from a GameState without trying every pair of Tubes.
+ * It reads each Tube once for its top color, the size of its top run and its empty space, and links
+ * the Tubes with the same top color together. The moves from a Tube can then only go to the empty Tubes
+ * and to the Tubes with the same top color, so the work grows with the number of moves instead of
+ * the square of the number of Tubes.
+ * Moves come out in (from, to) order, the same order as checking every pair with GameState.isValidMove.
+ *
+ * Given the move that led to the state, two kinds of moves are left out before any child state is made:
+ * 1) The move straight back, which only returns to the state before.
+ * 2) Moves between two other Tubes that come before the last move in (from, to) order. Moves on four
+ *    different Tubes can be made in either order and give the same state, so only the ordering that
+ *    goes up is searched. Every sequence of moves has an ordering like this of the same length,
+ *    so the fewest moves to each state do not change.
+ *
+ * generatePredecessors lists the moves that lead to a state instead, for searches that go backward from solved.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class MoveGenerator {
+    private static final int COLORS = 16; // Color codes, 0 is used for empty Tubes
+    private static final int END = -1;
+
+    private int[] topRun; // Size of the top run of each Tube
+    private int[] space; // Empty space in each Tube
+    private int[] firstWithTop = new int[COLORS]; // Lowest numbered Tube with each top color
+    private int[] nextWithTop; // Next Tube with the same top color, in order
+
+    // Moves found by the last call to generate
+    private int[] from;
+    private int[] to;
+    private int[] count; // Blocks each move carries
+    private int size;
+
+    public MoveGenerator(int tubeCount) {
+        topRun = new int[tubeCount];
+        space = new int[tubeCount];
+        nextWithTop = new int[tubeCount];
+        from = new int[tubeCount];
+        to = new int[tubeCount];
+        count = new int[tubeCount];
+    }
+
+    // The generator for a depth of a search, creating it the first time the search gets that deep.
+    // Each depth needs its own since the moves at every depth on the current path are still being tried
+    public static MoveGenerator forDepth(ArrayList<MoveGenerator> generators, int depth, int tubeCount) {
+        while(generators.size() <= depth){
+            generators.add(new MoveGenerator(tubeCount));
+        }
+        return generators.get(depth);
+    }
+
+    // Find every legal move from this state. Returns the number of moves
+    public int generate(GameState state) {
+        return generate(state, -1, -1, 0);
+    }
+
+    // Find the legal moves from a state reached by moving lastCount Blocks from lastFrom to lastTo,
+    // leaving out the move straight back and moves that could have been made before the last one.
+    // lastFrom is -1 if there was no last move. Returns the number of moves
+    public int generate(GameState state, int lastFrom, int lastTo, int lastCount) {
+        int tubeCount = state.getTubeCount();
+        if(topRun.length < tubeCount){
+            topRun = new int[tubeCount];
+            space = new int[tubeCount];
+            nextWithTop = new int[tubeCount];
+        }
+
+        // Link the Tubes by top color. Going backward and adding to the front keeps each list in order
+        Arrays.fill(firstWithTop, END);
+        for(int t = tubeCount - 1; t >= 0; t--){
+            byte color = state.viewTopBlock(t);
+            topRun[t] = color == 0 ? 0 : state.getTopColorSize(t);
+            space[t] = state.getEmptySpace(t);
+            nextWithTop[t] = firstWithTop[color];
+            firstWithTop[color] = t;
+        }
+
+        size = 0;
+        for(int f = 0; f < tubeCount; f++){
+            byte color = state.viewTopBlock(f);
+            if(color == 0){
+                continue;
+            }
+            int run = topRun[f];
+            boolean touchesLast = f == lastFrom || f == lastTo;
+
+            // Moving a Tube of a single color into an empty Tube changes nothing, so empty Tubes are skipped
+            int empty = run == state.getFillAmt(f) ? END : firstWithTop[0];
+            int same = firstWithTop[color];
+
+            // Walk both lists together so targets come out in order
+            while(empty != END || same != END){
+                int target;
+                if(same == END || (empty != END && empty < same)){
+                    target = empty;
+                    empty = nextWithTop[empty];
+                }
+                else{
+                    target = same;
+                    same = nextWithTop[same];
+                }
+                if(target == f || space[target] < run){
+                    continue;
+                }
+                if(lastFrom >= 0){
+                    // Straight back: the same Blocks return to where they came from
+                    if(f == lastTo && target == lastFrom && run == lastCount){
+                        continue;
+                    }
+                    // Independent of the last move and before it in order: the other ordering is searched instead
+                    boolean independent = !touchesLast && target != lastFrom && target != lastTo;
+                    if(independent && f * tubeCount + target < lastFrom * tubeCount + lastTo){
+                        continue;
+                    }
+                }
+                add(f, target, run);
+            }
+        }
+        return size;
+    }
+
+    // Find every move that leads to this state: moves where state.undo(from, to, count) gives a state from which
+    // moving from to to is legal and carries exactly count Blocks. Returns the number of moves.
+    // The state is changed while the moves are checked, but it is the same again when this returns
+    public int generatePredecessors(GameState state) {
+        size = 0;
+        int tubeCount = state.getTubeCount();
+        for(int a = 0; a < tubeCount; a++){
+            for(int b = 0; b < tubeCount; b++){
+                if(a == b || state.isEmpty(b)){
+                    continue;
+                }
+                // The last move may have carried any number of the Blocks on top of b from a
+                int run = state.getTopColorSize(b);
+                for(int k = 1; k <= run && k <= state.getEmptySpace(a); k++){
+                    state.undo(a, b, k);
+                    // It is only a real move if a then had exactly k Blocks of that color on top
+                    if(state.isValidMove(a, b) && state.getTopColorSize(a) == k){
+                        add(a, b, k);
+                    }
+                    state.undo(b, a, k);
+                }
+            }
+        }
+        return size;
+    }
+
+    private void add(int fromTube, int toTube, int blocks) {
+        if(size == from.length){
+            from = Arrays.copyOf(from, size * 2);
+            to = Arrays.copyOf(to, size * 2);
+            count = Arrays.copyOf(count, size * 2);
+        }
+        from[size] = fromTube;
+        to[size] = toTube;
+        count[size] = blocks;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFrom(int move) {
+        return from[move];
+    }
+
+    public int getTo(int move) {
+        return to[move];
+    }
+
+    // Number of Blocks the move carries
+    public int getCount(int move) {
+        return count[move];
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * OffHeapStateTable is a VisitedTable that keeps its entries outside the Java heap, so a search over
+ * hundreds of millions of states does not grow the heap or make garbage collection slower.
+ * Entries live in direct ByteBuffers, or in memory-mapped files when a folder is given, so the operating
+ * system can write them out to disk when memory runs short.
+ *
+ * Every slot has the same layout: long hash (0 marks an empty slot), int value, then the state's key.
+ * Slots are found by open addressing like StateTable, and the table doubles when it is half full.
+ * A single buffer can only hold 2 GB, so the slots are split over chunks of up to 1 GB.
+ *
+ * Buffers outside the heap are otherwise only freed when the garbage collector notices them, so close() and
+ * resize() free them straight away. A mapped file is deleted as soon as it is mapped: the mapping keeps the
+ * space until it is freed, and no file is left behind if the game stops. Systems that cannot delete a mapped
+ * file delete it in close() instead.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class OffHeapStateTable implements VisitedTable {
+    private static final int CHUNK_BYTES = 1 << 30; // Largest chunk
+    private static final int HASH = 0; // Offsets inside a slot
+    private static final int VALUE = 8;
+    private static final int KEY = 12;
+
+    // Frees a direct or mapped buffer without waiting for the garbage collector: sun.misc.Unsafe.invokeCleaner.
+    // null if this JVM does not have it, then buffers are left to the garbage collector
+    private static final Object unsafe;
+    private static final Method invokeCleaner;
+    static {
+        Object foundUnsafe = null;
+        Method foundMethod = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            foundUnsafe = field.get(null);
+            foundMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            foundUnsafe = null;
+            foundMethod = null;
+        }
+        unsafe = foundUnsafe;
+        invokeCleaner = foundMethod;
+    }
+
+    private final boolean symmetric; // Ignore color letters as well as Tube order
+    private final File folder; // Folder for the memory-mapped file, null for direct memory
+    private final int keyLength;
+    private final int slotBytes;
+    private ByteBuffer[] chunks;
+    private File file; // Backing file when memory-mapped and it could not be deleted yet, otherwise null
+    private long slotCount; // Always a power of 2
+    private int chunkShift; // Slot number >> chunkShift is its chunk
+    private long size;
+    private final byte[] probeKey; // Key of the state being checked
+    private boolean keyReady; // probeKey holds the key of the state being checked
+    private final byte[] storedKey; // Key read back from a slot to compare
+
+    // Table for states of this state's Level. With a folder the entries are in a memory-mapped file in it
+    public OffHeapStateTable(GameState state, boolean symmetric, File folder) {
+        this.symmetric = symmetric;
+        this.folder = folder;
+        keyLength = state.getCanonicalKeyLength();
+        slotBytes = KEY + keyLength;
+        probeKey = new byte[keyLength];
+        storedKey = new byte[keyLength];
+        allocate(1024);
+    }
+
+    @Override
+    public boolean add(GameState state) {
+        long hash = hashOf(state);
+        long slot = find(state, hash);
+        if(hashAt(slot) == hash){
+            return false;
+        }
+        insert(state, hash, slot, 0);
+        return true;
+    }
+
+    @Override
+    public boolean addIfLower(GameState state, int value) {
+        long hash = hashOf(state);
+        long slot = find(state, hash);
+        if(hashAt(slot) == hash){
+            ByteBuffer chunk = chunkOf(slot);
+            int offset = offsetOf(slot);
+            if(chunk.getInt(offset + VALUE) <= value){
+                return false;
+            }
+            chunk.putInt(offset + VALUE, value);
+            return true;
+        }
+        insert(state, hash, slot, value);
+        return true;
+    }
+
+    @Override
+    public int getValue(GameState state) {
+        long hash = hashOf(state);
+        long slot = find(state, hash);
+        if(hashAt(slot) == hash){
+            return chunkOf(slot).getInt(offsetOf(slot) + VALUE);
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(GameState state) {
+        long hash = hashOf(state);
+        return hashAt(find(state, hash)) == hash;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    // Free the buffers and delete the file now instead of waiting for the garbage collector
+    @Override
+    public void close() {
+        if(chunks == null){
+            return;
+        }
+        free(chunks, file);
+        chunks = null;
+        file = null;
+        size = 0;
+    }
+
+    @Override
+    public void clear() {
+        for(long slot = 0; slot < slotCount; slot++){
+            chunkOf(slot).putLong(offsetOf(slot) + HASH, 0L);
+        }
+        size = 0;
+    }
+
+    // Hash used to find a state. A symmetric hash is computed from the symmetric key, which is kept in probeKey.
+    // 0 marks empty slots, so a hash of 0 is stored as 1
+    private long hashOf(GameState state) {
+        long hash;
+        if(symmetric){
+            state.writeSymmetricKey(probeKey, 0);
+            hash = GameState.hashKey(probeKey, 0, keyLength);
+        }
+        else{
+            hash = state.canonicalHash();
+        }
+        keyReady = symmetric;
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Find the slot holding this state, or the empty slot where it would go.
+    // The key is only built when a stored hash matches
+    private long find(GameState state, long hash) {
+        long mask = slotCount - 1;
+        long slot = (hash ^ (hash >>> 32)) & mask;
+        while(true){
+            long stored = hashAt(slot);
+            if(stored == 0){
+                return slot;
+            }
+            if(stored == hash){
+                writeKey(state);
+                chunkOf(slot).get(offsetOf(slot) + KEY, storedKey);
+                if(Arrays.equals(storedKey, probeKey)){
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Store a new state's key and value in an empty slot
+    private void insert(GameState state, long hash, long slot, int value) {
+        writeKey(state);
+        ByteBuffer chunk = chunkOf(slot);
+        int offset = offsetOf(slot);
+        chunk.putLong(offset + HASH, hash);
+        chunk.putInt(offset + VALUE, value);
+        chunk.put(offset + KEY, probeKey);
+        size++;
+
+        // Keep the table at most half full so probe chains stay short
+        if(size * 2 > slotCount){
+            resize();
+        }
+    }
+
+    // Write the state's canonical key into probeKey if it is not there yet
+    private void writeKey(GameState state) {
+        if(!keyReady){
+            state.writeCanonicalKey(probeKey, 0);
+            keyReady = true;
+        }
+    }
+
+    // Double the number of slots and copy every entry into its new slot
+    private void resize() {
+        ByteBuffer[] oldChunks = chunks;
+        File oldFile = file;
+        long oldSlotCount = slotCount;
+        int oldShift = chunkShift;
+        allocate(oldSlotCount * 2);
+
+        long mask = slotCount - 1;
+        byte[] entry = new byte[slotBytes];
+        for(long oldSlot = 0; oldSlot < oldSlotCount; oldSlot++){
+            ByteBuffer oldChunk = oldChunks[(int) (oldSlot >>> oldShift)];
+            int oldOffset = (int) (oldSlot & ((1L << oldShift) - 1)) * slotBytes;
+            long hash = oldChunk.getLong(oldOffset + HASH);
+            if(hash != 0){
+                long slot = (hash ^ (hash >>> 32)) & mask;
+                while(hashAt(slot) != 0){
+                    slot = (slot + 1) & mask;
+                }
+                oldChunk.get(oldOffset, entry);
+                chunkOf(slot).put(offsetOf(slot), entry);
+            }
+        }
+        free(oldChunks, oldFile);
+    }
+
+    // Free every chunk, then delete the file they were mapped from if it is still there
+    private static void free(ByteBuffer[] oldChunks, File oldFile) {
+        if(invokeCleaner != null){
+            for(ByteBuffer chunk : oldChunks){
+                try {
+                    invokeCleaner.invoke(unsafe, chunk);
+                } catch (ReflectiveOperationException e) {
+                    break; // Left to the garbage collector
+                }
+            }
+        }
+        Arrays.fill(oldChunks, null);
+        if(oldFile != null){
+            oldFile.delete();
+        }
+    }
+
+    // Create empty chunks for this many slots
+    private void allocate(long slots) {
+        slotCount = slots;
+        long slotsPerChunk = Long.highestOneBit(CHUNK_BYTES / slotBytes);
+        if(slotsPerChunk > slots){
+            slotsPerChunk = slots;
+        }
+        chunkShift = Long.numberOfTrailingZeros(slotsPerChunk);
+        int chunkCount = (int) (slots / slotsPerChunk);
+        int chunkBytes = (int) (slotsPerChunk * slotBytes);
+        chunks = new ByteBuffer[chunkCount];
+
+        if(folder == null){
+            for(int i = 0; i < chunkCount; i++){
+                chunks[i] = ByteBuffer.allocateDirect(chunkBytes);
+            }
+            return;
+        }
+        try {
+            folder.mkdirs();
+            file = File.createTempFile("states", ".tbl", folder);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                raf.setLength((long) chunkCount * chunkBytes);
+                for(int i = 0; i < chunkCount; i++){
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * chunkBytes, chunkBytes);
+                }
+            }
+            // The mapping keeps the space, so the file's name is not needed any more
+            if(file.delete()){
+                file = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't create state table file", e);
+        }
+    }
+
+    private long hashAt(long slot) {
+        return chunkOf(slot).getLong(offsetOf(slot) + HASH);
+    }
+
+    private ByteBuffer chunkOf(long slot) {
+        return chunks[(int) (slot >>> chunkShift)];
+    }
+
+    private int offsetOf(long slot) {
+        return (int) (slot & ((1L << chunkShift) - 1)) * slotBytes;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Finds a shortest solution to a Level using IDA* (Iterative Deepening A*).
+ * Each pass is a Depth-First search that cuts off any branch where the moves made so far plus
+ * GameState.lowerBound() go over the current bound, see IdaSearch. The bound starts at the lower bound of the Level
+ * and is raised to the smallest value that went over it, so the first solution found uses the fewest moves.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+
+public class OptimalSolver implements Solver {
+    private VisitedTable searchHistory; // Fewest moves each game state was reached with during the current pass
+    private ArrayList <Point> moveList; // Moves from the current state to the solution, in order. Empty if no solution is found
+    private boolean solved;
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+    private SearchControl control; // Stops the search when time runs out or it is cancelled
+    private SolverMetrics metrics;
+
+    public OptimalSolver(Level level) {
+        this(new GameState(level.getTubeList()));
+    }
+
+    public OptimalSolver(GameState state) {
+        this(state, TIMELIMIT);
+    }
+
+    // Search with a different time limit in ms
+    public OptimalSolver(GameState state, long timeLimit) {
+        this(state, new SearchControl(timeLimit));
+    }
+
+    // Search until the SearchControl says to stop
+    public OptimalSolver(GameState state, SearchControl control) {
+        metrics = new SolverMetrics("IDA*");
+        searchHistory = StateTable.forSearch(state);
+        moveList = new ArrayList<>();
+        this.control = control;
+
+        // Search a copy since moves are applied to the state in place
+        solved = solve(state.copy());
+        metrics.visitedSize(searchHistory.size());
+        searchHistory.close();
+        metrics.finish(solved, moveList.size());
+    }
+
+    // Run Depth-First passes with a growing bound until a solution is found, no moves are left or time runs out
+    private boolean solve(GameState state) {
+        IdaSearch search = new IdaSearch(state, searchHistory, null);
+        int bound = state.lowerBound();
+        while(true){
+            int next = search.pass(bound, control, metrics);
+            if(next == IdaSearch.FOUND){
+                moveList = search.getSolution();
+                return true;
+            }
+            if(control.shouldStop()){
+                metrics.stop();
+                return false;
+            }
+            // Every branch was searched without going over the bound: the Level cannot be solved
+            if(next == Integer.MAX_VALUE){
+                return false;
+            }
+            bound = next;
+        }
+    }
+
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    // Number of moves in the shortest solution, or -1 if no solution was found
+    public int getSolutionLength() {
+        return solved ? moveList.size() : -1;
+    }
+
+    // Every move of the shortest solution in order
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Attempts to solve a Level using Depth-First search spread across every core with a ForkJoinPool.
+ * Near the top of the search tree every valid move becomes its own task, and idle threads steal tasks
+ * from busy ones. Below splitDepth each task searches its subtree on a single thread with its own DepthFirstSearch.
+ * All threads share one table of visited states, and the search stops as soon as any thread finds a solution.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelSolver implements Solver {
+    private ConcurrentStateTable searchHistory; // Game states already checked by any thread
+    private ArrayList <Point> moveList; // Moves from the current state to the solution, in order. Empty if no solution is found
+    private volatile boolean solved; // Set by the first thread to find a solution so every other thread stops
+    private int maxSearchDepth = 10000; // Depth allowed to search before stopping
+    private int splitDepth = 6; // Depth above which every move is forked as a new task
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+    private SearchControl control; // Stops every thread when time runs out or the search is cancelled
+    private SolverMetrics metrics = new SolverMetrics("Parallel Depth-First"); // Each task adds its counts when it finishes
+
+    public ParallelSolver(Level level) {
+        this(new GameState(level.getTubeList()), ForkJoinPool.commonPool());
+    }
+
+    public ParallelSolver(GameState state, ForkJoinPool pool) {
+        this(state, pool, new SearchControl(TIMELIMIT));
+    }
+
+    // Search until the SearchControl says to stop
+    public ParallelSolver(GameState state, ForkJoinPool pool, SearchControl control) {
+        searchHistory = ConcurrentStateTable.forSearch(state);
+        moveList = new ArrayList<>();
+        this.control = control;
+
+        // Tasks apply moves to their state in place, so start from a copy
+        state = state.copy();
+        searchHistory.add(state);
+        ArrayList<Point> solution = pool.invoke(new SearchTask(state, 0));
+        if(solution != null){
+            moveList = solution;
+        }
+        metrics.visitedSize(searchHistory.size());
+        metrics.finish(solution != null, moveList.size());
+    }
+
+    // Searches the moves from one game state. Returns the moves to a solution in order, or null.
+    // Each task owns its GameState, so forked tasks get a copy and the subtree search changes it in place.
+    private class SearchTask extends RecursiveTask<ArrayList<Point>> {
+        private final GameState state;
+        private final int depth;
+
+        private SearchTask(GameState state, int depth) {
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected ArrayList<Point> compute() {
+            if(state.isSolved()){
+                solved = true;
+                return new ArrayList<>();
+            }
+            if(solved || control.shouldStop()){
+                return null;
+            }
+            if(depth >= splitDepth){
+                return searchSubtree(state, depth);
+            }
+
+            // Fork a task for every new state one move away
+            ArrayList<SearchTask> tasks = new ArrayList<>();
+            ArrayList<Point> moves = new ArrayList<>();
+            int generated = 0;
+            for(int i = 0; i < state.getTubeCount(); i++){
+                for(int j = 0; j < state.getTubeCount(); j++){
+                    if(state.isValidMove(i, j)){
+                        generated++;
+                        GameState newState = state.moveBlock(i, j);
+                        if(searchHistory.add(newState)){
+                            SearchTask task = new SearchTask(newState, depth + 1);
+                            task.fork();
+                            tasks.add(task);
+                            moves.add(new Point(i, j));
+                        }
+                    }
+                }
+            }
+            metrics.add(1, generated, generated - tasks.size(), tasks.isEmpty() ? depth : depth + 1);
+
+            // Wait for the tasks in order. Once one finds a solution the rest stop early because solved is set
+            ArrayList<Point> solution = null;
+            for(int t = 0; t < tasks.size(); t++){
+                ArrayList<Point> result = tasks.get(t).join();
+                if(result != null && solution == null){
+                    result.addFirst(moves.get(t));
+                    solution = result;
+                }
+            }
+            return solution;
+        }
+    }
+
+    // Single threaded Depth-First search below splitDepth, from a state startDepth moves from the start.
+    // Each subtree has its own DepthFirstSearch since subtrees run on different threads. Its counts are added to
+    // metrics once at the end, so threads do not share counters while searching
+    private ArrayList<Point> searchSubtree(GameState state, int startDepth) {
+        DepthFirstSearch search = new DepthFirstSearch(searchHistory::add, maxSearchDepth);
+        // Stop if another thread found a solution or time is up
+        ArrayList<Point> solution = search.search(state, startDepth, () -> solved || control.shouldStop());
+        if(solution != null){
+            solved = true;
+        }
+        metrics.add(search.getNodesExpanded(), search.getNodesGenerated(), search.getDuplicateHits(), search.getMaxDepth());
+        return solution;
+    }
+
+    @Override
+    public boolean isSolved() {
+        return solved;
+    }
+
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+}
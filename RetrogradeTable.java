@@ -0,0 +1,364 @@
+/*
+ * RetrogradeTable stores the exact number of moves left to solve every game state of one Level shape:
+ * the number of Tubes, their capacity and the number of colors (each color fills one Tube).
+ * The table is built backward from the solved state with a breadth-first search over moves made in reverse,
+ * so every state that can be solved is found along with its distance to the solved state.
+ * With the table loaded, the best move from any state is the move to a state one move closer.
+ *
+ * States are stored as a single long: each Tube is a number in base (colors + 1), one digit per slot,
+ * and the Tubes are sorted before being combined so Tube order is ignored. Only shapes where this fits
+ * in 63 bits can have a table.
+ *
+ * Table files are read through a memory-mapped buffer, so only the parts that are used are loaded.
+ * File format (big-endian):
+ *   int MAGIC, int VERSION, int tubes, int capacity, int colors, int slot count
+ *   slot count longs: state key in each slot, 0 for an empty slot (open addressing)
+ *   slot count bytes: distance to solved for the state in the same slot
+ *
+ * Build tables with: java RetrogradeTable <tubes> <capacity> <colors>
+ *                or: java RetrogradeTable <level file>   (every shape in the file that fits)
+ */
+
+import java.awt.*;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Scanner;
+
+public class RetrogradeTable {
+    private static final int MAGIC = 0x42524554; // "BRET"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final String TABLE_FOLDER = "tables";
+    // Shapes with more states than this are too big to build and ship
+    private static final int MAX_STATES = 1 << 22;
+
+    // Tables already opened, by file name. null is stored for shapes that have no table file
+    private static final HashMap<String, RetrogradeTable> openTables = new HashMap<>();
+
+    private final int tubes;
+    private final int capacity;
+    private final int colors;
+    private final int slots;
+    private final MappedByteBuffer buffer;
+
+    private RetrogradeTable(int tubes, int capacity, int colors, int slots, MappedByteBuffer buffer) {
+        this.tubes = tubes;
+        this.capacity = capacity;
+        this.colors = colors;
+        this.slots = slots;
+        this.buffer = buffer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length == 3){
+            build(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        // Build a table for every shape in a level file that fits
+        String filename = args.length > 0 ? args[0] : "levels/levels.lvl";
+        Scanner in = new Scanner(new File(filename));
+        HashSet<String> skipped = new HashSet<>();
+        while(in.hasNext()){
+            GameState state = new GameState(new Level(in).getTubeList());
+            int[] shape = getShape(state);
+            if(shape != null && fits(shape[0], shape[1], shape[2])
+                    && !skipped.contains(getFileName(shape[0], shape[1], shape[2]))
+                    && !new File(getFileName(shape[0], shape[1], shape[2])).exists()){
+                try {
+                    build(shape[0], shape[1], shape[2]);
+                } catch (IllegalStateException e) {
+                    System.out.println("Skipped " + shape[0] + " tubes, capacity " + shape[1] + ", "
+                            + shape[2] + " colors: " + e.getMessage());
+                    skipped.add(getFileName(shape[0], shape[1], shape[2]));
+                }
+            }
+        }
+        in.close();
+    }
+
+    // Table for this state's shape, or null if there is no table file for it
+    public static synchronized RetrogradeTable forState(GameState state) {
+        int[] shape = getShape(state);
+        if(shape == null){
+            return null;
+        }
+        String filename = getFileName(shape[0], shape[1], shape[2]);
+        if(!openTables.containsKey(filename)){
+            openTables.put(filename, open(filename));
+        }
+        return openTables.get(filename);
+    }
+
+    // Open a table file. Returns null if it is missing or cannot be read
+    public static RetrogradeTable open(String filename) {
+        File file = new File(filename);
+        if(!file.exists()){
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+                System.out.println("Unknown retrograde table format: " + filename);
+                return null;
+            }
+            return new RetrogradeTable(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getInt(20), buffer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Couldn't load retrograde table");
+            return null;
+        }
+    }
+
+    public static String getFileName(int tubes, int capacity, int colors) {
+        return TABLE_FOLDER + "/t" + tubes + "c" + capacity + "k" + colors + ".dist";
+    }
+
+    // {tubes, capacity, colors} of a state, or null if its Tubes are different sizes
+    // or a color does not have exactly one Tube's worth of Blocks
+    private static int[] getShape(GameState state) {
+        int capacity = state.getCapacity(0);
+        int[] count = new int[16];
+        for(int i = 0; i < state.getTubeCount(); i++){
+            if(state.getCapacity(i) != capacity){
+                return null;
+            }
+            for(int j = 0; j < state.getFillAmt(i); j++){
+                count[state.getBlock(i, j)]++;
+            }
+        }
+        int colors = 0;
+        for(int color = 1; color < count.length; color++){
+            if(count[color] != 0 && count[color] != capacity){
+                return null;
+            }
+            if(count[color] != 0){
+                colors++;
+            }
+        }
+        return new int[]{state.getTubeCount(), capacity, colors};
+    }
+
+    // A shape fits if (colors + 1) ^ (tubes * capacity) is less than 2^63
+    public static boolean fits(int tubes, int capacity, int colors) {
+        return tubes * capacity * Math.log(colors + 1) / Math.log(2) < 63;
+    }
+
+    // Moves left to solve this state, or -1 if it cannot be solved or is not this table's shape
+    public int getDistance(GameState state) {
+        int[] shape = getShape(state);
+        if(shape == null || shape[0] != tubes || shape[1] != capacity || shape[2] != colors){
+            return -1;
+        }
+        long key = encode(state, colors + 1);
+        int mask = slots - 1;
+        int slot = spread(key) & mask;
+        while(true){
+            long stored = buffer.getLong(HEADER_SIZE + slot * 8);
+            if(stored == 0){
+                return -1;
+            }
+            if(stored == key){
+                return buffer.get(HEADER_SIZE + slots * 8 + slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // A move that leads one move closer to solved, or null if the state cannot be solved or is already solved
+    public Point getBestMove(GameState state) {
+        int distance = getDistance(state);
+        if(distance <= 0){
+            return null;
+        }
+        GameState next = state.copy();
+        for(int i = 0; i < state.getTubeCount(); i++){
+            for(int j = 0; j < state.getTubeCount(); j++){
+                if(next.isValidMove(i, j)){
+                    int count = next.apply(i, j);
+                    boolean closer = getDistance(next) == distance - 1;
+                    next.undo(i, j, count);
+                    if(closer){
+                        return new Point(i, j);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // Build the table for a shape and write it to its file in the tables folder
+    public static void build(int tubes, int capacity, int colors) throws IOException {
+        if(!fits(tubes, capacity, colors)){
+            throw new IllegalArgumentException("Shape does not fit in a 64-bit key: " + tubes + " tubes, capacity "
+                    + capacity + ", " + colors + " colors");
+        }
+        long start = System.currentTimeMillis();
+        int base = colors + 1;
+
+        // The solved state: one full Tube of each color and the rest empty
+        GameState solved = new GameState(tubes, capacity);
+        for(int color = 1; color <= colors; color++){
+            for(int i = 0; i < capacity; i++){
+                solved.addBlock(color - 1, (byte) color);
+            }
+        }
+
+        // Breadth-first search backward from the solved state, one distance at a time
+        LongByteMap distances = new LongByteMap();
+        long[] frontier = {encode(solved, base)};
+        int frontierSize = 1;
+        distances.put(frontier[0], (byte) 0);
+        int distance = 0;
+        MoveGenerator predecessors = new MoveGenerator(tubes);
+        while(frontierSize > 0){
+            if(distance == Byte.MAX_VALUE){
+                throw new IllegalStateException("Distance does not fit in a byte");
+            }
+            long[] next = new long[1024];
+            int nextSize = 0;
+            for(int f = 0; f < frontierSize; f++){
+                GameState state = decode(frontier[f], tubes, capacity, base);
+                int moveCount = predecessors.generatePredecessors(state);
+                for(int m = 0; m < moveCount; m++){
+                    int a = predecessors.getFrom(m);
+                    int b = predecessors.getTo(m);
+                    int k = predecessors.getCount(m);
+                    state.undo(a, b, k);
+                    long key = encode(state, base);
+                    if(distances.putIfAbsent(key, (byte) (distance + 1))){
+                        if(distances.size() > MAX_STATES){
+                            throw new IllegalStateException("more than " + MAX_STATES + " states");
+                        }
+                        if(nextSize == next.length){
+                            next = Arrays.copyOf(next, next.length * 2);
+                        }
+                        next[nextSize++] = key;
+                    }
+                    state.undo(b, a, k);
+                }
+            }
+            frontier = next;
+            frontierSize = nextSize;
+            distance++;
+        }
+
+        String filename = getFileName(tubes, capacity, colors);
+        distances.write(filename, tubes, capacity, colors);
+        System.out.println("Wrote " + filename + ": " + distances.size() + " states, longest solution "
+                + (distance - 1) + " moves, " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    // Encode a state as a long. Each Tube is a number in base (colors + 1) with the bottom slot as the lowest digit,
+    // and the sorted Tube numbers are the digits of the key in base (colors + 1) ^ capacity
+    private static long encode(GameState state, int base) {
+        long[] tubeValues = new long[state.getTubeCount()];
+        for(int i = 0; i < tubeValues.length; i++){
+            long value = 0;
+            for(int j = state.getFillAmt(i) - 1; j >= 0; j--){
+                value = value * base + state.getBlock(i, j);
+            }
+            tubeValues[i] = value;
+        }
+        Arrays.sort(tubeValues);
+        long tubeBase = 1;
+        for(int i = 0; i < state.getCapacity(0); i++){
+            tubeBase *= base;
+        }
+        long key = 0;
+        for(int i = tubeValues.length - 1; i >= 0; i--){
+            key = key * tubeBase + tubeValues[i];
+        }
+        return key;
+    }
+
+    // Turn a key made by encode back into a state
+    private static GameState decode(long key, int tubes, int capacity, int base) {
+        GameState state = new GameState(tubes, capacity);
+        for(int i = 0; i < tubes; i++){
+            for(int j = 0; j < capacity; j++){
+                byte color = (byte) (key % base);
+                key /= base;
+                if(color != 0){
+                    state.addBlock(i, color);
+                }
+            }
+        }
+        return state;
+    }
+
+    // Spread the bits of a key to pick a slot
+    private static int spread(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        return (int) (key ^ (key >>> 33));
+    }
+
+    // Open addressing map from state key to distance, used while building a table.
+    // Kept at most half full, in the same layout as the table file
+    private static class LongByteMap {
+        private long[] keys = new long[1024];
+        private byte[] values = new byte[1024];
+        private int size;
+
+        // Add a key. Returns false if it was already there
+        boolean putIfAbsent(long key, byte value) {
+            int mask = keys.length - 1;
+            int slot = spread(key) & mask;
+            while(keys[slot] != 0){
+                if(keys[slot] == key){
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+            if(size * 2 > keys.length){
+                resize();
+            }
+            return true;
+        }
+
+        void put(long key, byte value) {
+            putIfAbsent(key, value);
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            byte[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new byte[oldKeys.length * 2];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++){
+                if(oldKeys[i] != 0){
+                    putIfAbsent(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        void write(String filename, int tubes, int capacity, int colors) throws IOException {
+            new File(filename).getParentFile().mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(tubes);
+                out.writeInt(capacity);
+                out.writeInt(colors);
+                out.writeInt(keys.length);
+                for(long key : keys){
+                    out.writeLong(key);
+                }
+                out.write(values);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * SearchControl tells a running solver when to stop searching.
+ * A search stops when its time limit runs out or when another thread cancels it,
+ * for example when the player moves a Block while a hint is still being searched.
+ * A SearchControl can also limit a background search to a share of one core by pausing it now and then.
+ */
+
+public class SearchControl {
+    private final long deadline; // Time in ms (System.currentTimeMillis) when the search must stop
+    private final SearchControl parent; // Also stop when this control stops. null if there is none
+    private volatile boolean cancelled;
+
+    // Throttling. Only used by single threaded searches, since the counters are not shared safely between threads
+    private static final int CHECKS_PER_PAUSE = 4096; // shouldStop calls between checking how long the search has run
+    private double cpuShare = 1.0; // Share of one core the search may use. 1 never pauses
+    private int checks;
+    private long busyStart; // Time in ns when the search last started running after a pause
+
+    // Allow a search to run for timeLimit ms from now
+    public SearchControl(long timeLimit) {
+        this(timeLimit, null);
+    }
+
+    private SearchControl(long timeLimit, SearchControl parent) {
+        deadline = System.currentTimeMillis() + timeLimit;
+        this.parent = parent;
+        cancelled = false;
+    }
+
+    // Control for part of a search that gets at most timeLimit ms, and still stops when this control stops
+    public SearchControl limit(long timeLimit) {
+        return new SearchControl(timeLimit, this);
+    }
+
+    // Control with no time limit of its own that stops when this control stops, and can be cancelled alone
+    public SearchControl branch() {
+        return new SearchControl(Long.MAX_VALUE / 2, this);
+    }
+
+    // Stop the search as soon as the solver next checks. Safe to call from any thread
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Limit the search to this share of one core, for example 0.25 for a quarter
+    public void setCpuShare(double cpuShare) {
+        this.cpuShare = cpuShare;
+        busyStart = System.nanoTime();
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    // Checked by solvers while they search. A throttled search pauses here
+    public boolean shouldStop() {
+        if(cpuShare < 1.0 && ++checks >= CHECKS_PER_PAUSE){
+            checks = 0;
+            pause();
+        }
+        return isCancelled() || System.currentTimeMillis() > deadline || (parent != null && parent.shouldStop());
+    }
+
+    // Sleep long enough that the time spent searching is only cpuShare of the total
+    private void pause() {
+        long busy = System.nanoTime() - busyStart;
+        long sleepMs = (long) (busy * (1.0 - cpuShare) / cpuShare / 1000000);
+        if(sleepMs > 0){
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+            }
+            busyStart = System.nanoTime();
+        }
+    }
+}
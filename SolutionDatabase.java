@@ -0,0 +1,152 @@
+/*
+ * SolutionDatabase holds precomputed next moves for game states, written by the SolveAll command line tool.
+ * Entries are sorted by the state's canonical hash so a lookup is a binary search.
+ * Each entry also stores the hash of the state after its move, and a lookup only returns the move if making it
+ * really leads to that state, so a state whose Tubes are in a different order is never given a wrong move.
+ * The same state can appear in more than one Level with its Tubes in a different order, so a hash can have
+ * several entries. They are sorted by moves left and the first one that checks out is used.
+ *
+ * File format (big-endian):
+ *   int MAGIC, int VERSION, int entry count
+ *   for each entry, sorted by hash: long hash, long next hash, byte from, byte to, short moves left to solve
+ */
+
+import java.awt.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class SolutionDatabase {
+    private static final int MAGIC = 0x42534F4C; // "BSOL"
+    private static final int VERSION = 1;
+
+    private long[] hashes; // Canonical hash of each state, sorted
+    private long[] nextHashes; // Canonical hash after making the move
+    private byte[] from;
+    private byte[] to;
+    private short[] movesLeft; // Moves in the solution from this state. Also the par score for a Level's start
+
+    // An empty database, used when there is no file
+    public SolutionDatabase() {
+        this(new long[0], new long[0], new byte[0], new byte[0], new short[0]);
+    }
+
+    private SolutionDatabase(long[] hashes, long[] nextHashes, byte[] from, byte[] to, short[] movesLeft) {
+        this.hashes = hashes;
+        this.nextHashes = nextHashes;
+        this.from = from;
+        this.to = to;
+        this.movesLeft = movesLeft;
+    }
+
+    // Load a database file. Returns an empty database if the file is missing or cannot be read
+    public static SolutionDatabase load(String filename) {
+        File file = new File(filename);
+        if(!file.exists()){
+            return new SolutionDatabase();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION){
+                System.out.println("Unknown solution database format: " + filename);
+                return new SolutionDatabase();
+            }
+            int count = in.readInt();
+            SolutionDatabase database = new SolutionDatabase(new long[count], new long[count],
+                    new byte[count], new byte[count], new short[count]);
+            for(int i = 0; i < count; i++){
+                database.hashes[i] = in.readLong();
+                database.nextHashes[i] = in.readLong();
+                database.from[i] = in.readByte();
+                database.to[i] = in.readByte();
+                database.movesLeft[i] = in.readShort();
+            }
+            return database;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Couldn't load solution database");
+            return new SolutionDatabase();
+        }
+    }
+
+    // Write solutions to a database file. Each solution is the start state of a Level and its moves in order.
+    public static void write(String filename, ArrayList<GameState> starts, ArrayList<ArrayList<Point>> solutions)
+            throws IOException {
+        ArrayList<long[]> entries = new ArrayList<>(); // {hash, next hash, from, to, moves left}
+        for(int i = 0; i < starts.size(); i++){
+            GameState state = starts.get(i);
+            ArrayList<Point> moves = solutions.get(i);
+            for(int m = 0; m < moves.size(); m++){
+                Point move = moves.get(m);
+                GameState next = state.moveBlock(move.x, move.y);
+                entries.add(new long[]{state.canonicalHash(), next.canonicalHash(), move.x, move.y, moves.size() - m});
+                state = next;
+            }
+        }
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[4], b[4]));
+
+        // Drop entries that repeat the same move from the same state
+        ArrayList<long[]> unique = new ArrayList<>();
+        for(long[] entry : entries){
+            boolean repeated = false;
+            for(int i = unique.size() - 1; i >= 0 && unique.get(i)[0] == entry[0]; i--){
+                if(unique.get(i)[2] == entry[2] && unique.get(i)[3] == entry[3]){
+                    repeated = true;
+                }
+            }
+            if(!repeated){
+                unique.add(entry);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(unique.size());
+            for(long[] entry : unique){
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeByte((int) entry[2]);
+                out.writeByte((int) entry[3]);
+                out.writeShort((int) entry[4]);
+            }
+        }
+    }
+
+    // Precomputed next move from this state, or null if the state is not in the database
+    public Point getNextMove(GameState state) {
+        int index = find(state);
+        return index < 0 ? null : new Point(from[index], to[index]);
+    }
+
+    // Number of moves left in the stored solution from this state, or -1 if the state is not in the database.
+    // For the start of a shipped Level this is its par score
+    public int getMovesLeft(GameState state) {
+        int index = find(state);
+        return index < 0 ? -1 : movesLeft[index];
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+
+    // Index of the entry with the fewest moves left whose move works for this state, or -1 if there is none
+    private int find(GameState state) {
+        long hash = state.canonicalHash();
+        int index = Arrays.binarySearch(hashes, hash);
+        if(index < 0){
+            return -1;
+        }
+        // Back up to the first entry with this hash
+        while(index > 0 && hashes[index - 1] == hash){
+            index--;
+        }
+        // Check the move on this state really leads to the stored next state. It will not if the Tubes are in another order
+        for(; index < hashes.length && hashes[index] == hash; index++){
+            if(state.isValidMove(from[index], to[index])
+                    && state.moveBlock(from[index], to[index]).canonicalHash() == nextHashes[index]){
+                return index;
+            }
+        }
+        return -1;
+    }
+}
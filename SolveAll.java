@@ -0,0 +1,65 @@
+/*
+ * Command line tool that solves every Level in a level file and writes a SolutionDatabase.
+ * Levels are solved in parallel, one per core, with the shortest solution when one is found in time.
+ * Level.hint looks up the database before searching, so hints on the shipped Levels are instant.
+ *
+ * Run with: java SolveAll [level file] [database file]
+ * Defaults: levels/levels.lvl levels/levels.sol
+ * The visited-state tables of the searches can be changed with -D options, see StateTable.
+ */
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.*;
+
+public class SolveAll {
+    private static final long TIMELIMIT = 60000L; // Time in ms allowed to solve each Level
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        String levelFile = args.length > 0 ? args[0] : "levels/levels.lvl";
+        String databaseFile = args.length > 1 ? args[1] : "levels/levels.sol";
+
+        // Read every Level in the file
+        ArrayList<Level> levels = new ArrayList<>();
+        Scanner in = new Scanner(new File(levelFile));
+        while(in.hasNext()){
+            levels.add(new Level(in));
+        }
+        in.close();
+
+        // Solve every Level on its own thread
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        ArrayList<Future<ArrayList<Point>>> results = new ArrayList<>();
+        ArrayList<GameState> starts = new ArrayList<>();
+        for(Level level : levels){
+            GameState start = new GameState(level.getTubeList());
+            starts.add(start);
+            results.add(executor.submit(() -> solve(start)));
+        }
+
+        ArrayList<ArrayList<Point>> solutions = new ArrayList<>();
+        for(int i = 0; i < levels.size(); i++){
+            ArrayList<Point> solution = results.get(i).get();
+            solutions.add(solution);
+            String result = solution.isEmpty() ? "no solution found" : solution.size() + " moves";
+            System.out.println("Level " + levels.get(i).getId() + ": " + result);
+        }
+        executor.shutdown();
+        System.out.println(SolverMetrics.getTotals());
+
+        SolutionDatabase.write(databaseFile, starts, solutions);
+        System.out.println("Wrote " + databaseFile);
+    }
+
+    // Shortest solution if one is found in time, otherwise any solution from Depth-First search
+    private static ArrayList<Point> solve(GameState start) {
+        ArrayList<Point> solution = new OptimalSolver(start, TIMELIMIT).getMoveList();
+        if(solution.isEmpty()){
+            solution = new SolveLevel(start, new SearchControl(TIMELIMIT)).getMoveList();
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Solver is what every search for a Level's solution gives back once it has run.
+ * Each solver searches when it is made, from a GameState and until a SearchControl says to stop,
+ * so a Solver only reports what was found. SolverPortfolio runs several kinds at once on the same state.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+
+public interface Solver {
+    // True if a solution was found
+    boolean isSolved();
+
+    // Moves from the start state to the solution, in order. Only a whole solution if isSolved is true
+    ArrayList<Point> getMoveList();
+
+    // First move of the move list, or null if there is none
+    default Point getNextMove() {
+        ArrayList<Point> moveList = getMoveList();
+        if(moveList.isEmpty()){
+            return null;
+        }
+        return moveList.getFirst();
+    }
+
+    // Work done by the search, see SolverMetrics
+    SolverMetrics getMetrics();
+}
@@ -0,0 +1,376 @@
+/*
+ * Benchmark suite for the solver, the move primitives and level parsing.
+ * Every benchmark is run for a warmup period first so the JIT compiler has finished, then for a number of
+ * measured iterations of a fixed time each. For each one it prints the operations per second (with the
+ * spread between iterations), the time per operation and the bytes allocated per operation, which is
+ * read from the JVM's count of bytes allocated by the benchmark thread. Benchmarks that run solvers also print
+ * the SolverMetrics totals of their measured iterations.
+ *
+ * Benchmarks:
+ * - solve <file>: solving every Level in a level file with SolveLevel. An operation is one Level
+ * - SolverPortfolio <file>: the same with the SolverPortfolio race, the way hints are searched
+ * - BeamSolver / MonteCarloSolver <file>: the same with the fixed memory solvers large boards use
+ * - Level.moveBlock + undo: a valid move and its undo on a Level, the way the player makes them
+ * - Tube.clone: copying a Tube and its Blocks, as Level.restart and Level.clone do
+ * - GameState copy + moveBlock / apply + undo: a solver move by copying the state or in place
+ * - GameState canonical key + hash: the key and hash StateTable builds for a state
+ * - Level(Scanner) <file>: parsing a level file. An operation is one Level
+ *
+ * Run with: java SolverBenchmark [-json results.json] [-filter text] [level files...]
+ * Defaults: levels/levels.lvl levels/test_levels.lvl. -filter only runs benchmarks with text in their name.
+ * -json also writes the results to a file so they can be compared between versions.
+ * The visited-state tables of the searches can be changed with -D options, see StateTable.
+ */
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Scanner;
+import java.util.function.LongSupplier;
+
+public class SolverBenchmark {
+    private static final long WARMUP_MS = 2000L; // Time each benchmark runs before it is measured
+    private static final long ITERATION_MS = 1000L; // Time of each measured iteration
+    private static final int ITERATIONS = 5;
+    private static long sink; // Results are added here so the JIT compiler cannot skip the work
+
+    // Counts bytes allocated by a thread. Only HotSpot based JVMs have it
+    private static final com.sun.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean()
+            instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported() ? bean : null;
+
+    private static ArrayList<Result> results = new ArrayList<>();
+    private static String filter = "";
+
+    public static void main(String[] args) throws IOException {
+        String jsonFile = null;
+        ArrayList<String> files = new ArrayList<>();
+        for(int i = 0; i < args.length; i++){
+            if(args[i].equals("-json") && i + 1 < args.length){
+                jsonFile = args[++i];
+            }
+            else if(args[i].equals("-filter") && i + 1 < args.length){
+                filter = args[++i];
+            }
+            else{
+                files.add(args[i]);
+            }
+        }
+        if(files.isEmpty()){
+            files.add("levels/levels.lvl");
+            files.add("levels/test_levels.lvl");
+        }
+
+        // Moves made by the benchmarks should not start hint searches on other threads
+        Level.setHintPrefetch(false);
+
+        ArrayList<Level> levels = new ArrayList<>();
+        for(String file : files){
+            ArrayList<Level> fileLevels = loadLevels(file);
+            levels.addAll(fileLevels);
+            ArrayList<GameState> starts = new ArrayList<>();
+            for(Level level : fileLevels){
+                starts.add(new GameState(level.getTubeList()));
+            }
+            run("solve " + file, "levels", () -> solveAll(starts));
+            run("SolverPortfolio " + file, "levels", () -> raceAll(starts));
+            run("BeamSolver " + file, "levels", () -> beamAll(starts));
+            run("MonteCarloSolver " + file, "levels", () -> monteCarloAll(starts));
+        }
+
+        ArrayList<GameState> levelStarts = new ArrayList<>();
+        for(Level level : levels){
+            levelStarts.add(new GameState(level.getTubeList()));
+        }
+        ArrayList<Point[]> levelStartMoves = findMoves(levelStarts);
+        ArrayList<GameState> states = solutionStates(levels);
+        ArrayList<Point[]> moves = findMoves(states);
+        System.out.println("Move benchmarks use " + states.size() + " game states along solutions");
+        run("Level.moveBlock + undo", "moves", () -> levelMoves(levels, levelStartMoves));
+        run("Tube.clone", "tubes", () -> cloneTubes(levels));
+        run("GameState copy + moveBlock", "moves", () -> copyPath(states, moves));
+        run("GameState apply + undo", "moves", () -> kernelPath(states, moves));
+        run("GameState canonical key + hash", "states", () -> hashStates(states));
+        for(String file : files){
+            String text = Files.readString(Path.of(file));
+            run("Level(Scanner) " + file, "levels", () -> parse(text));
+        }
+
+        if(jsonFile != null){
+            writeJson(jsonFile);
+            System.out.println("Wrote " + jsonFile);
+        }
+    }
+
+    // Run a benchmark whose LongSupplier does some work and returns how many operations it did
+    private static void run(String name, String unit, LongSupplier benchmark) {
+        if(!name.contains(filter)){
+            return;
+        }
+        long warmupEnd = System.nanoTime() + WARMUP_MS * 1000000;
+        while(System.nanoTime() < warmupEnd){
+            benchmark.getAsLong();
+        }
+
+        // Solver totals only count the measured iterations
+        SolverMetrics.resetTotals();
+        double[] opsPerSecond = new double[ITERATIONS];
+        long totalOps = 0;
+        long totalNanos = 0;
+        long totalBytes = 0;
+        for(int i = 0; i < ITERATIONS; i++){
+            long ops = 0;
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long end = start + ITERATION_MS * 1000000;
+            long now = start;
+            while(now < end){
+                ops += benchmark.getAsLong();
+                now = System.nanoTime();
+            }
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+            totalNanos += now - start;
+            opsPerSecond[i] = ops * 1e9 / (now - start);
+        }
+
+        Result result = new Result(name, unit, mean(opsPerSecond), standardDeviation(opsPerSecond),
+                (double) totalNanos / totalOps, threads == null ? -1 : (double) totalBytes / totalOps);
+        results.add(result);
+        System.out.printf("%-40s %14.1f +- %-10.1f %s/sec %12.1f ns/op %12s%n", name, result.opsPerSecond,
+                result.error, unit, result.nsPerOp, result.bytesPerOp < 0 ? "" : String.format("%.1f B/op", result.bytesPerOp));
+        SolverMetrics totals = SolverMetrics.getTotals();
+        if(totals.getRuns() > 0){
+            System.out.println("    " + totals);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for(double value : values){
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double standardDeviation(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for(double value : values){
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / Math.max(1, values.length - 1));
+    }
+
+    private static ArrayList<Level> loadLevels(String filename) throws FileNotFoundException {
+        ArrayList<Level> levels = new ArrayList<>();
+        Scanner in = new Scanner(new File(filename));
+        while(in.hasNext()){
+            levels.add(new Level(in));
+        }
+        in.close();
+        return levels;
+    }
+
+    // Every Level's start and every state along a solution, so the benchmarks see early, middle and late game states
+    private static ArrayList<GameState> solutionStates(ArrayList<Level> levels) {
+        ArrayList<GameState> states = new ArrayList<>();
+        for(Level level : levels){
+            GameState state = new GameState(level.getTubeList());
+            SolveLevel solveLevel = new SolveLevel(state);
+            states.add(state);
+            for(Point move : solveLevel.getMoveList()){
+                state = state.moveBlock(move.x, move.y);
+                states.add(state);
+            }
+        }
+        return states;
+    }
+
+    // Valid moves of every state, found once up front so only the move itself is timed
+    private static ArrayList<Point[]> findMoves(ArrayList<GameState> states) {
+        ArrayList<Point[]> moves = new ArrayList<>();
+        for(GameState state : states){
+            ArrayList<Point> valid = new ArrayList<>();
+            for(int i = 0; i < state.getTubeCount(); i++){
+                for(int j = 0; j < state.getTubeCount(); j++){
+                    if(state.isValidMove(i, j)){
+                        valid.add(new Point(i, j));
+                    }
+                }
+            }
+            moves.add(valid.toArray(new Point[0]));
+        }
+        return moves;
+    }
+
+    // Solve every Level from its start
+    private static long solveAll(ArrayList<GameState> starts) {
+        for(GameState start : starts){
+            sink += new SolveLevel(start).getMoveList().size();
+        }
+        return starts.size();
+    }
+
+    // Race the strategies for each Level from its start
+    private static long raceAll(ArrayList<GameState> starts) {
+        for(GameState start : starts){
+            sink += new SolverPortfolio(start).getMoveList().size();
+        }
+        return starts.size();
+    }
+
+    // Solve every Level from its start with beam search
+    private static long beamAll(ArrayList<GameState> starts) {
+        for(GameState start : starts){
+            sink += new BeamSolver(start).getMoveList().size();
+        }
+        return starts.size();
+    }
+
+    // Solve every Level from its start with Monte Carlo tree search
+    private static long monteCarloAll(ArrayList<GameState> starts) {
+        for(GameState start : starts){
+            sink += new MonteCarloSolver(start).getMoveList().size();
+        }
+        return starts.size();
+    }
+
+    // Make every valid move from each Level's start on the Level itself, undoing each one.
+    // Each undo puts the Level back at its start, so the moves found up front stay valid
+    private static long levelMoves(ArrayList<Level> levels, ArrayList<Point[]> moves) {
+        long count = 0;
+        for(int l = 0; l < levels.size(); l++){
+            Level level = levels.get(l);
+            ArrayList<Tube> tubeList = level.getTubeList();
+            for(Point move : moves.get(l)){
+                level.moveBlock(tubeList.get(move.x), tubeList.get(move.y));
+                level.undo();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Copy every Tube of every Level
+    private static long cloneTubes(ArrayList<Level> levels) {
+        long count = 0;
+        for(Level level : levels){
+            for(Tube tube : level.getTubeList()){
+                sink += tube.clone().getFillAmt();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Make every valid move from every state by copying the state, and read the new state's hash
+    private static long copyPath(ArrayList<GameState> states, ArrayList<Point[]> moves) {
+        long count = 0;
+        for(int s = 0; s < states.size(); s++){
+            GameState state = states.get(s);
+            for(Point move : moves.get(s)){
+                sink += state.moveBlock(move.x, move.y).canonicalHash();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Make every valid move from every state in place, read the hash, then undo the move
+    private static long kernelPath(ArrayList<GameState> states, ArrayList<Point[]> moves) {
+        long count = 0;
+        for(int s = 0; s < states.size(); s++){
+            GameState state = states.get(s);
+            for(Point move : moves.get(s)){
+                int blocks = state.apply(move.x, move.y);
+                sink += state.canonicalHash();
+                state.undo(move.x, move.y, blocks);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Write and hash the key that tells states apart regardless of Tube order
+    private static long hashStates(ArrayList<GameState> states) {
+        for(GameState state : states){
+            byte[] key = new byte[state.getCanonicalKeyLength()];
+            state.writeCanonicalKey(key, 0);
+            sink += GameState.hashKey(key, 0, key.length);
+        }
+        return states.size();
+    }
+
+    // Read every Level from a level file's text
+    private static long parse(String text) {
+        long count = 0;
+        Scanner in = new Scanner(text);
+        while(in.hasNext()){
+            sink += new Level(in).getTubeList().size();
+            count++;
+        }
+        return count;
+    }
+
+    // Results as a JSON array, one object per benchmark
+    // Numbers are written with Locale.ROOT so a decimal comma never ends up in the JSON
+    private static void writeJson(String filename) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"java\": \"").append(escape(System.getProperty("java.version"))).append("\",\n");
+        json.append("  \"time\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"warmupMs\": ").append(WARMUP_MS).append(",\n");
+        json.append("  \"iterationMs\": ").append(ITERATION_MS).append(",\n");
+        json.append("  \"iterations\": ").append(ITERATIONS).append(",\n");
+        json.append("  \"results\": [\n");
+        for(int i = 0; i < results.size(); i++){
+            Result result = results.get(i);
+            json.append("    {\"name\": \"").append(escape(result.name))
+                    .append("\", \"unit\": \"").append(escape(result.unit))
+                    .append("\", \"opsPerSecond\": ").append(String.format(Locale.ROOT, "%.3f", result.opsPerSecond))
+                    .append(", \"error\": ").append(String.format(Locale.ROOT, "%.3f", result.error))
+                    .append(", \"nsPerOp\": ").append(String.format(Locale.ROOT, "%.3f", result.nsPerOp))
+                    .append(", \"bytesPerOp\": ").append(result.bytesPerOp < 0 ? "null" : String.format(Locale.ROOT, "%.1f", result.bytesPerOp))
+                    .append("}").append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("  ]\n}\n");
+        try (FileWriter writer = new FileWriter(filename)) {
+            writer.write(json.toString());
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // Measurements of one benchmark
+    private static class Result {
+        private final String name;
+        private final String unit; // What one operation is
+        private final double opsPerSecond; // Mean of the measured iterations
+        private final double error; // Standard deviation between iterations
+        private final double nsPerOp;
+        private final double bytesPerOp; // -1 if the JVM cannot count allocated bytes
+
+        private Result(String name, String unit, double opsPerSecond, double error, double nsPerOp, double bytesPerOp) {
+            this.name = name;
+            this.unit = unit;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * SolverMetrics counts the work one solver run did, so a slow hint or a Level that times out can be explained:
+ * nodes expanded (states whose moves were made), nodes generated (moves made), duplicate hits (moves to a state
+ * already reached), the deepest move reached, the largest the visited-state table got and the time taken.
+ * Every run adds its counts to totals kept for the whole time the game runs, which can be read at any time
+ * with SolverMetrics.getTotals().
+ * Counting is a few field increments per node. A run's SolverMetrics is only changed by the thread running
+ * the search, except add(), which threads of a parallel search may call at the same time.
+ */
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SolverMetrics {
+    // Totals of every finished run
+    private static final LongAdder totalRuns = new LongAdder();
+    private static final LongAdder totalSolved = new LongAdder();
+    private static final LongAdder totalExpanded = new LongAdder();
+    private static final LongAdder totalGenerated = new LongAdder();
+    private static final LongAdder totalDuplicates = new LongAdder();
+    private static final LongAdder totalNanos = new LongAdder();
+    private static final LongAccumulator deepest = new LongAccumulator(Math::max, 0);
+    private static final LongAccumulator largestVisited = new LongAccumulator(Math::max, 0);
+
+    private final String solver; // Name of the solver that made the run
+    private final long startTime; // System.nanoTime when the run started
+    private long elapsedNanos; // Time from start until finish, or until now if the run has not finished
+    private boolean finished;
+    private boolean solved;
+    private boolean stopped; // The SearchControl stopped the run before it searched everything
+    private int solutionLength; // -1 if no solution was found
+    private boolean isTotal; // Made by getTotals
+    private long runs = 1;
+    private long solvedRuns; // Runs that found a solution, only counted for totals
+    private long expanded;
+    private long generated;
+    private long duplicates;
+    private int maxDepth;
+    private long peakVisited;
+
+    // Start counting a run of this solver
+    public SolverMetrics(String solver) {
+        this.solver = solver;
+        startTime = System.nanoTime();
+        solutionLength = -1;
+    }
+
+    // A state's moves were generated
+    public void expand() {
+        expanded++;
+    }
+
+    // count moves were made from the state being expanded
+    public void generate(int count) {
+        generated += count;
+    }
+
+    // A move led to a state that was already reached, so it was not searched again
+    public void duplicate() {
+        duplicates++;
+    }
+
+    // The search reached this many moves from the start
+    public void reachDepth(int depth) {
+        if(depth > maxDepth){
+            maxDepth = depth;
+        }
+    }
+
+    // The visited-state table held this many states
+    public void visitedSize(long size) {
+        if(size > peakVisited){
+            peakVisited = size;
+        }
+    }
+
+    // The run's SearchControl stopped it before it searched everything, so no solution does not mean there is none
+    public void stop() {
+        stopped = true;
+    }
+
+    // Add counts made by one thread of a parallel search
+    public synchronized void add(long expanded, long generated, long duplicates, int depth) {
+        this.expanded += expanded;
+        this.generated += generated;
+        this.duplicates += duplicates;
+        reachDepth(depth);
+    }
+
+    // Stop the clock and add this run to the totals. Only the first call counts
+    public synchronized void finish(boolean solved, int solutionLength) {
+        if(finished){
+            return;
+        }
+        finished = true;
+        elapsedNanos = System.nanoTime() - startTime;
+        this.solved = solved;
+        this.solutionLength = solved ? solutionLength : -1;
+
+        totalRuns.increment();
+        if(solved){
+            totalSolved.increment();
+        }
+        totalExpanded.add(expanded);
+        totalGenerated.add(generated);
+        totalDuplicates.add(duplicates);
+        totalNanos.add(elapsedNanos);
+        deepest.accumulate(maxDepth);
+        largestVisited.accumulate(peakVisited);
+    }
+
+    // Totals of every run finished so far. solved is true if any run found a solution
+    public static SolverMetrics getTotals() {
+        SolverMetrics totals = new SolverMetrics("all solvers");
+        totals.isTotal = true;
+        totals.finished = true;
+        totals.runs = totalRuns.sum();
+        totals.solvedRuns = getTotalSolved();
+        totals.solved = totals.solvedRuns > 0;
+        totals.expanded = totalExpanded.sum();
+        totals.generated = totalGenerated.sum();
+        totals.duplicates = totalDuplicates.sum();
+        totals.elapsedNanos = totalNanos.sum();
+        totals.maxDepth = (int) deepest.get();
+        totals.peakVisited = largestVisited.get();
+        return totals;
+    }
+
+    // Number of finished runs that found a solution
+    public static long getTotalSolved() {
+        return totalSolved.sum();
+    }
+
+    // Start the totals again from 0
+    public static void resetTotals() {
+        totalRuns.reset();
+        totalSolved.reset();
+        totalExpanded.reset();
+        totalGenerated.reset();
+        totalDuplicates.reset();
+        totalNanos.reset();
+        deepest.reset();
+        largestVisited.reset();
+    }
+
+    public String getSolver() {
+        return solver;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isSolved() {
+        return solved;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+
+    public long getNodesExpanded() {
+        return expanded;
+    }
+
+    public long getNodesGenerated() {
+        return generated;
+    }
+
+    public long getDuplicateHits() {
+        return duplicates;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getPeakVisited() {
+        return peakVisited;
+    }
+
+    // Time the run took in ms, or has taken so far if it is still running
+    public double getElapsedMs() {
+        return (finished ? elapsedNanos : System.nanoTime() - startTime) / 1e6;
+    }
+
+    public double getNodesPerSecond() {
+        double seconds = getElapsedMs() / 1000;
+        return seconds > 0 ? generated / seconds : 0;
+    }
+
+    // Share of generated nodes that were already reached
+    public double getDuplicateRate() {
+        return generated > 0 ? (double) duplicates / generated : 0;
+    }
+
+    // The branching factor b a uniform tree would need to have as many nodes as were generated, down to the depth
+    // of the solution (or the deepest depth reached if there is none): generated = b + b^2 + ... + b^depth.
+    // Close to 1 means the search went almost straight to the answer. 0 if nothing was generated
+    public double getEffectiveBranchingFactor() {
+        int depth = solutionLength > 0 ? solutionLength : maxDepth;
+        if(generated == 0 || depth == 0){
+            return 0;
+        }
+        // Nodes of the uniform tree grow with b, so b is found by halving the range it can be in
+        double low = 0;
+        double high = Math.max(1, generated);
+        for(int i = 0; i < 100; i++){
+            double b = (low + high) / 2;
+            double nodes = 0;
+            double level = 1;
+            for(int d = 0; d < depth && nodes <= generated; d++){
+                level *= b;
+                nodes += level;
+            }
+            if(nodes < generated){
+                low = b;
+            }
+            else{
+                high = b;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    @Override
+    public String toString() {
+        String result = isTotal ? runs + " runs, " + solvedRuns + " solved"
+                : solved ? "solved in " + solutionLength + " moves" : stopped ? "stopped" : finished ? "no solution" : "running";
+        return String.format("%s: %s, %.1f ms, %d expanded, %d generated (%.0f/sec), %d duplicates (%.0f%%), "
+                        + "max depth %d, branching %.2f, peak visited %d",
+                solver, result, getElapsedMs(), expanded, generated, getNodesPerSecond(), duplicates,
+                getDuplicateRate() * 100, maxDepth, getEffectiveBranchingFactor(), peakVisited);
+    }
+}
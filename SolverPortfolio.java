@@ -0,0 +1,164 @@
+/*
+ * SolverPortfolio races several kinds of solver on the same Level at once and keeps the first solution.
+ * Small Levels are solved soonest by Depth-First search, harder ones by IDA* or a search from both ends,
+ * so running them side by side gives about the best time of any of them without picking one per Level.
+ * Boards bigger than the shipped Levels race beam search and Monte Carlo tree search instead of the exhaustive
+ * searches, so hints keep working in fixed memory.
+ * Each Strategy runs on its own thread with its own SearchControl. As soon as one finds a solution
+ * the others are cancelled, and they stop the next time they check their control.
+ * A strategy that fails, for example by running out of memory, is recorded and the race goes on with the rest.
+ */
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class SolverPortfolio implements Solver {
+    private static final long TIMELIMIT = 5000L; // Time in ms allowed to search before stopping
+
+    // Threads are kept between races. Daemon threads so a race left running never keeps the game open
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Solver Portfolio");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public enum Strategy {
+        DEPTH_FIRST, // SolveLevel: any solution, fastest on small Levels
+        OPTIMAL, // OptimalSolver: shortest solution by IDA*
+        BIDIRECTIONAL, // BidirectionalSolver: shortest solution by searching from both ends
+        ANYTIME, // AnytimeSolver: shortest solution, keeps its best move so far
+        PARALLEL, // ParallelSolver: Depth-First search over every core
+        BEAM, // BeamSolver: any solution on Levels too big for the others, in fixed memory
+        MONTE_CARLO; // MonteCarloSolver: any solution by Monte Carlo tree search, in fixed memory
+
+        // Run this kind of solver on the state until control says to stop
+        public Solver solve(GameState state, SearchControl control) {
+            return switch(this){
+                case DEPTH_FIRST -> new SolveLevel(state, control);
+                case OPTIMAL -> new OptimalSolver(state, control);
+                case BIDIRECTIONAL -> new BidirectionalSolver(state, control);
+                case ANYTIME -> {
+                    AnytimeSolver anytimeSolver = new AnytimeSolver(state);
+                    anytimeSolver.improve(control);
+                    anytimeSolver.close();
+                    yield anytimeSolver;
+                }
+                case PARALLEL -> new ParallelSolver(state, ForkJoinPool.commonPool(), control);
+                case BEAM -> new BeamSolver(state, control, BeamSolver.DEFAULT_WIDTH);
+                case MONTE_CARLO -> new MonteCarloSolver(state, control, MonteCarloSolver.DEFAULT_ITERATIONS,
+                        MonteCarloSolver.DEFAULT_MAX_NODES);
+            };
+        }
+    }
+
+    // One thread each, so the single threaded strategies. PARALLEL already uses every core
+    public static final List<Strategy> DEFAULT_STRATEGIES = List.of(Strategy.DEPTH_FIRST, Strategy.OPTIMAL, Strategy.BIDIRECTIONAL);
+    // Boards bigger than every shipped Level swap the searches whose tables grow without limit for fixed memory ones
+    public static final List<Strategy> LARGE_BOARD_STRATEGIES = List.of(Strategy.DEPTH_FIRST, Strategy.BEAM, Strategy.MONTE_CARLO);
+    public static final int LARGE_BOARD_TUBES = 14;
+    public static final int LARGE_BOARD_COLORS = 12;
+
+    private ArrayList<Point> moveList; // Moves of the first solution found, in order. Empty if none was found
+    private Strategy winner; // Strategy that found the solution, null if none did
+    private SolverMetrics metrics; // The winner's metrics, or the last strategy to give up's if none won
+    private EnumMap<Strategy, Throwable> failures = new EnumMap<>(Strategy.class); // What each failed strategy threw
+
+    public SolverPortfolio(GameState state) {
+        this(state, new SearchControl(TIMELIMIT));
+    }
+
+    public SolverPortfolio(GameState state, SearchControl control) {
+        this(state, control, strategiesFor(state));
+    }
+
+    // Strategies to race on this state: LARGE_BOARD_STRATEGIES if it has at least LARGE_BOARD_TUBES Tubes or
+    // LARGE_BOARD_COLORS colors, otherwise DEFAULT_STRATEGIES
+    public static List<Strategy> strategiesFor(GameState state) {
+        if(state.getTubeCount() >= LARGE_BOARD_TUBES || state.getColorCount() >= LARGE_BOARD_COLORS){
+            return LARGE_BOARD_STRATEGIES;
+        }
+        return DEFAULT_STRATEGIES;
+    }
+
+    // Race these strategies until one finds a solution, all of them give up or control says to stop
+    public SolverPortfolio(GameState state, SearchControl control, List<Strategy> strategies) {
+        moveList = new ArrayList<>();
+        metrics = new SolverMetrics("Portfolio");
+        CompletionService<Result> race = new ExecutorCompletionService<>(executor);
+        ArrayList<SearchControl> controls = new ArrayList<>();
+        HashMap<Future<Result>, Strategy> running = new HashMap<>(); // Which strategy each task runs
+        for(Strategy strategy : strategies){
+            // Each strategy gets its own control so the losers can be cancelled, and every one still stops with control
+            SearchControl strategyControl = control.branch();
+            controls.add(strategyControl);
+            running.put(race.submit(() -> new Result(strategy, strategy.solve(state, strategyControl))), strategy);
+        }
+
+        // Take strategies as they finish until one has a solution or every one has finished
+        try {
+            for(int i = 0; i < strategies.size(); i++){
+                Future<Result> finished = race.take();
+                Result result;
+                try {
+                    result = finished.get();
+                } catch (ExecutionException e) {
+                    failures.put(running.get(finished), e.getCause());
+                    continue;
+                }
+                metrics = result.solver.getMetrics();
+                if(result.solver.isSolved() && !control.isCancelled()){
+                    moveList = result.solver.getMoveList();
+                    winner = result.strategy;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Only the ones still running are left to stop
+        for(SearchControl strategyControl : controls){
+            strategyControl.cancel();
+        }
+    }
+
+    // Strategy that found the solution, or null if none did
+    public Strategy getWinner() {
+        return winner;
+    }
+
+    // What each strategy that failed threw. Empty if none failed
+    public EnumMap<Strategy, Throwable> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public boolean isSolved() {
+        return winner != null;
+    }
+
+    @Override
+    public ArrayList<Point> getMoveList() {
+        return moveList;
+    }
+
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    // A strategy and what it found
+    private static class Result {
+        private final Strategy strategy;
+        private final Solver solver;
+
+        private Result(Strategy strategy, Solver solver) {
+            this.strategy = strategy;
+            this.solver = solver;
+        }
+    }
+}
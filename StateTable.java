@@ -0,0 +1,287 @@
+/*
+ * StateTable is the set of GameStates the solver has already visited (a transposition table).
+ * GameStates are found by their 64-bit canonical hash using open addressing in a long array,
+ * so checking a state is O(1) instead of searching a list of every state seen so far.
+ * Each entry also keeps the state's canonical key, so two different states with the same hash
+ * are never mistaken for each other, and an int value such as the number of moves used to reach it.
+ * A symmetric StateTable also treats states that only differ by which letter each color has as the same state.
+ *
+ * The tables searches use can be changed for a whole run with -D options, for example java -DsymmetryReduction=true SolveAll:
+ * - symmetryReduction=true: symmetric tables for Levels with at least SYMMETRY_MIN_COLORS colors. Off by default,
+ *   since building symmetric keys makes the shipped Levels about twice as slow to solve
+ * - offHeap=direct or offHeap=<folder>: OffHeapStateTables in direct memory, or in memory-mapped files in the folder,
+ *   for searches too big for the Java heap
+ * - memoryLimit=<bytes>: BoundedStateTables that use at most this many bytes each. A k, m or g suffix counts
+ *   kilobytes, megabytes or gigabytes, for example -DmemoryLimit=512m
+ */
+
+import java.io.File;
+import java.util.Arrays;
+
+public class StateTable implements VisitedTable {
+    // Levels with at least this many colors use a symmetric table when symmetry reduction is turned on.
+    // Symmetric keys cost more to build than the canonical hash, so small Levels are faster without them.
+    public static final int SYMMETRY_MIN_COLORS = 6;
+    private static volatile boolean symmetryReduction = Boolean.getBoolean("symmetryReduction");
+    // Searches keep their states off the heap when this is on. See OffHeapStateTable
+    private static final String OFF_HEAP = System.getProperty("offHeap");
+    private static volatile boolean offHeap = OFF_HEAP != null;
+    // Folder for memory-mapped tables, null for direct memory
+    private static volatile File offHeapFolder = OFF_HEAP == null || OFF_HEAP.equals("direct") ? null : new File(OFF_HEAP);
+    private static volatile long memoryLimit = parseBytes(System.getProperty("memoryLimit", "0")); // Bytes a search's table may use. 0 for no limit
+
+    private long[] hashes; // Canonical hash in each slot. 0 marks an empty slot
+    private int[] entries; // Index of the key in keyStore for each slot
+    private byte[] keyStore; // Canonical keys of every state added, one after another
+    private int[] values; // Value stored with each key, by the same index
+    private int keyLength; // Every state of a Level has the same key length
+    private byte[] probeKey; // Reused buffer for the key of the state being checked
+    private int size;
+    private final boolean symmetric; // Ignore color letters as well as Tube order
+
+    public StateTable() {
+        this(1024);
+    }
+
+    public StateTable(int capacity) {
+        this(capacity, false);
+    }
+
+    // Capacity is rounded up to a power of 2 so the slot can be found with a mask instead of %
+    public StateTable(int capacity, boolean symmetric) {
+        this.symmetric = symmetric;
+        int slots = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        hashes = new long[slots];
+        entries = new int[slots];
+        values = new int[64];
+        size = 0;
+        keyLength = -1;
+    }
+
+    // Create the table a solver uses to search from this state
+    public static VisitedTable forSearch(GameState state) {
+        if(memoryLimit > 0){
+            return new BoundedStateTable(state, useSymmetry(state), memoryLimit);
+        }
+        if(offHeap){
+            return new OffHeapStateTable(state, useSymmetry(state), offHeapFolder);
+        }
+        return new StateTable(1024, useSymmetry(state));
+    }
+
+    // Whether a search from this state should also ignore color letters
+    public static boolean useSymmetry(GameState state) {
+        return symmetryReduction && state.getColorCount() >= SYMMETRY_MIN_COLORS;
+    }
+
+    // Turn color symmetry reduction on or off for searches started after this call
+    public static void setSymmetryReduction(boolean enabled) {
+        symmetryReduction = enabled;
+    }
+
+    // Keep the states of searches started after this call off the heap. With a folder the tables are
+    // memory-mapped files in it, otherwise they are in direct memory
+    public static void setOffHeap(boolean enabled, File folder) {
+        offHeapFolder = folder;
+        offHeap = enabled;
+    }
+
+    // Limit the table of each search started after this call to this many bytes. 0 removes the limit.
+    // See BoundedStateTable
+    public static void setMemoryLimit(long bytes) {
+        memoryLimit = bytes;
+    }
+
+    // Number of bytes in text like 4096, 512k, 64m or 2g
+    static long parseBytes(String text) {
+        text = text.trim().toLowerCase();
+        int shift = switch(text.isEmpty() ? ' ' : text.charAt(text.length() - 1)){
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        if(shift > 0){
+            text = text.substring(0, text.length() - 1);
+        }
+        return Long.parseLong(text) << shift;
+    }
+
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    // Add a GameState. Returns false if the same state (ignoring Tube order) was already added
+    @Override
+    public boolean add(GameState state) {
+        long hash = hashOf(state);
+        int slot = find(state, hash);
+        if(hashes[slot] == hash){
+            return false;
+        }
+        insert(state, hash, slot, 0);
+        return true;
+    }
+
+    // Add a GameState with a value, or lower the value of a state already added.
+    // Returns false if the state was already added with a value less than or equal to this one.
+    // IDA* uses this to skip states it has already reached in the same number of moves or fewer.
+    @Override
+    public boolean addIfLower(GameState state, int value) {
+        long hash = hashOf(state);
+        int slot = find(state, hash);
+        if(hashes[slot] == hash){
+            if(values[entries[slot]] <= value){
+                return false;
+            }
+            values[entries[slot]] = value;
+            return true;
+        }
+        insert(state, hash, slot, value);
+        return true;
+    }
+
+    // Value stored with a GameState, or -1 if the state has not been added
+    @Override
+    public int getValue(GameState state) {
+        long hash = hashOf(state);
+        int slot = find(state, hash);
+        if(hashes[slot] == hash){
+            return values[entries[slot]];
+        }
+        return -1;
+    }
+
+    // Store a new state's key and value and claim the empty slot
+    private void insert(GameState state, long hash, int slot, int value) {
+        // A symmetric key is already in probeKey from hashOf
+        if(!symmetric){
+            ensureKey(state);
+        }
+        if((size + 1) * keyLength > keyStore.length){
+            keyStore = Arrays.copyOf(keyStore, Math.max(keyStore.length * 2, (size + 1) * keyLength));
+        }
+        if(size == values.length){
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        System.arraycopy(probeKey, 0, keyStore, size * keyLength, keyLength);
+        values[size] = value;
+        hashes[slot] = hash;
+        entries[slot] = size;
+        size++;
+
+        // Keep the table at most half full so probe chains stay short
+        if(size * 2 > hashes.length){
+            resize();
+        }
+    }
+
+    // Check if a GameState (ignoring Tube order) has been added
+    @Override
+    public boolean contains(GameState state) {
+        long hash = hashOf(state);
+        return hashes[find(state, hash)] == hash;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(hashes, 0L);
+        size = 0;
+    }
+
+    // Hash used to find a state. Canonical hashes are kept up to date by GameState,
+    // but a symmetric hash has to be computed from the symmetric key
+    private long hashOf(GameState state) {
+        if(symmetric){
+            ensureKey(state);
+            return fixHash(GameState.hashKey(probeKey, 0, keyLength));
+        }
+        return fixHash(state.canonicalHash());
+    }
+
+    // Find the slot holding this state, or the empty slot where it would go.
+    // Only compares keys when the hashes match, so most lookups never build a key.
+    private int find(GameState state, long hash) {
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        boolean keyReady = symmetric; // hashOf already wrote the symmetric key
+        while(hashes[slot] != 0){
+            if(hashes[slot] == hash){
+                if(!keyReady){
+                    ensureKey(state);
+                    keyReady = true;
+                }
+                if(Arrays.equals(keyStore, entries[slot] * keyLength, (entries[slot] + 1) * keyLength,
+                        probeKey, 0, keyLength)){
+                    return slot;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Write the state's key into probeKey, creating the key buffers on first use
+    private void ensureKey(GameState state) {
+        if(keyLength < 0){
+            keyLength = state.getCanonicalKeyLength();
+            probeKey = new byte[keyLength];
+            keyStore = new byte[keyLength * 64];
+        }
+        if(symmetric){
+            state.writeSymmetricKey(probeKey, 0);
+        }
+        else{
+            state.writeCanonicalKey(probeKey, 0);
+        }
+    }
+
+    // Most bytes a table made with new StateTable(1024, ...) uses while adding this many states with keys of
+    // keyLength bytes. Slots and the key and value arrays all grow by doubling, and while one of them is copied
+    // the old and new copies are both held, so the table can use well over its bytes per state after it grows
+    static long memoryFor(int states, int keyLength) {
+        long slots = 1024;
+        while((long) states * 2 > slots){
+            slots *= 2;
+        }
+        long stored = 64;
+        while(states > stored){
+            stored *= 2;
+        }
+        long slotBytes = slots * (8 + 4);
+        long storedBytes = stored * (keyLength + 4);
+        // The largest copy was the last time one of them doubled
+        long copyBytes = Math.max(slots > 1024 ? slotBytes / 2 : 0, stored > 64 ? storedBytes / 2 : 0);
+        return slotBytes + storedBytes + copyBytes;
+    }
+
+    // Double the number of slots and re-insert every hash. Keys do not move
+    private void resize() {
+        long[] oldHashes = hashes;
+        int[] oldEntries = entries;
+        hashes = new long[oldHashes.length * 2];
+        entries = new int[oldHashes.length * 2];
+        int mask = hashes.length - 1;
+        for(int i = 0; i < oldHashes.length; i++){
+            long hash = oldHashes[i];
+            if(hash != 0){
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while(hashes[slot] != 0){
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = hash;
+                entries[slot] = oldEntries[i];
+            }
+        }
+    }
+
+    // 0 marks empty slots, so a real hash of 0 is stored as 1
+    private static long fixHash(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * VisitedTable is the set of GameStates a solver has already visited, with an int value kept for each state.
+ * StateTable keeps its entries on the Java heap. OffHeapStateTable keeps them in direct or memory-mapped
+ * buffers outside the heap, for searches too big to keep on the heap.
+ * States are the same if they only differ by Tube order.
+ * Solvers close their table when the search ends, so tables outside the heap give their memory back at once.
+ */
+
+public interface VisitedTable extends AutoCloseable {
+    // Add a GameState. Returns false if the same state was already added
+    boolean add(GameState state);
+
+    // Add a GameState with a value, or lower the value of a state already added.
+    // Returns false if the state was already added with a value less than or equal to this one.
+    boolean addIfLower(GameState state, int value);
+
+    // Value stored with a GameState, or -1 if the state has not been added
+    int getValue(GameState state);
+
+    boolean contains(GameState state);
+
+    int size();
+
+    // Remove every state
+    void clear();
+
+    // Free the memory the table uses. The table cannot be used after this. Heap tables leave it to the garbage collector
+    @Override
+    default void close() {
+    }
+}